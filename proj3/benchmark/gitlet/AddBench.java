@@ -0,0 +1,39 @@
+package gitlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of adding a changed file to a generated repository.
+ *  @author Kevin Ren
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AddBench extends GeneratedRepo {
+
+    /** Changes a file on master for the next add. */
+    @Setup(Level.Invocation)
+    public void change() {
+        _name = modify(0);
+    }
+
+    /** Adds the changed file. */
+    @Benchmark
+    public void add() {
+        run(repo -> repo.add(_name));
+    }
+
+    /** The file to add. */
+    private String _name;
+}
@@ -0,0 +1,33 @@
+package gitlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of switching between branches of a generated repository.
+ *  @author Kevin Ren
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CheckoutBench extends GeneratedRepo {
+
+    /** Checks out the first branch or master, whichever is not
+     *  current. */
+    @Benchmark
+    public void checkoutBranch() {
+        _onBranch = !_onBranch;
+        checkout(_onBranch ? branch(1) : "master");
+    }
+
+    /** True iff the first branch is checked out. */
+    private boolean _onBranch;
+}
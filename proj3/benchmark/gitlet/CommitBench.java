@@ -0,0 +1,40 @@
+package gitlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of committing a change to a generated repository.
+ *  @author Kevin Ren
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CommitBench extends GeneratedRepo {
+
+    /** Changes and stages a few files on master for the next commit. */
+    @Setup(Level.Invocation)
+    public void stage() {
+        run(repo -> {
+            for (int c = 0; c < CHANGES; c += 1) {
+                repo.add(modify(0));
+            }
+        });
+    }
+
+    /** Commits the staged files. */
+    @Benchmark
+    public void commit() {
+        run(repo -> repo.commit("benchmark"));
+    }
+}
@@ -0,0 +1,54 @@
+package gitlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of the binary encoding of commits, which need no
+ *  repository.
+ *  @author Kevin Ren
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class EncodeBench {
+
+    /** Makes a merge commit to encode, and its encoding to decode. */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Commit initial = new Commit("initial commit", "master");
+        _commit = new Commit("Merged branch1 into master.", initial.id(),
+                             initial.id(), new Tree().id(), "master");
+        _encoded = _commit.encode();
+    }
+
+    /** Encodes a commit as it is stored. */
+    @Benchmark
+    public byte[] encode() {
+        return _commit.encode();
+    }
+
+    /** Decodes a stored commit as readCommit does. */
+    @Benchmark
+    public Commit decode() {
+        return Commit.decode(_encoded);
+    }
+
+    /** The commit encoded. */
+    private Commit _commit;
+    /** The encoded commit. */
+    private byte[] _encoded;
+}
@@ -0,0 +1,197 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** A repository generated in the current directory for a benchmark to
+ *  work on, with FILES files of LINES lines each, BRANCHES branches
+ *  besides master, and DEPTH rounds of history.  In each round every
+ *  branch commits a change to a few files of its own, and master
+ *  commits a change and then merges every branch in.
+ *
+ *  Repo works on the current directory, so the benchmarks must be run
+ *  from a scratch directory holding a file named MARKER, as the
+ *  Makefile's run target does; generating a repository deletes any
+ *  .gitlet and DATA there.
+ *  @author Kevin Ren
+ */
+@State(Scope.Benchmark)
+public abstract class GeneratedRepo {
+
+    /** Name of the file marking a directory as fit for generating
+     *  repositories in. */
+    static final String MARKER = ".gitlet-bench";
+    /** Directory holding the generated files. */
+    static final String DATA = "data";
+    /** Files per subdirectory of DATA. */
+    static final int DIR_SIZE = 100;
+    /** Lines per generated file. */
+    static final int LINES = 40;
+    /** Files changed by each generated commit. */
+    static final int CHANGES = 3;
+
+    /** Number of files in the snapshot. */
+    @Param({ "1000" })
+    public int files;
+    /** Number of rounds of history. */
+    @Param({ "20" })
+    public int depth;
+    /** Number of branches besides master. */
+    @Param({ "4" })
+    public int branches;
+
+    /** Generates the repository, and silences the commands' output. */
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        prepare();
+        _random = new Random(files * 31L + depth * 7L + branches);
+        new Repo().init();
+        writeFiles(files, _random);
+        run(repo -> {
+            for (int i = 0; i < files; i += 1) {
+                repo.add(name(i));
+            }
+            repo.commit("base");
+        });
+        for (int b = 1; b <= branches; b += 1) {
+            String branch = branch(b);
+            run(repo -> repo.branch(branch));
+        }
+        for (int round = 0; round < depth; round += 1) {
+            generateRound(round);
+        }
+    }
+
+    /** Checks that the current directory is fit for generating
+     *  repositories in, deletes any repository and DATA there, and
+     *  silences the commands' output. */
+    static void prepare() throws IOException {
+        if (!new File(MARKER).isFile()) {
+            throw new IllegalStateException(
+                "benchmarks must be run from a directory holding "
+                + MARKER);
+        }
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        deleteTree(Repo.GITLET.toPath());
+        deleteTree(new File(DATA).toPath());
+    }
+
+    /** Writes the generated files 0 to N - 1, each of LINES lines taken
+     *  from RANDOM. */
+    static void writeFiles(int n, Random random) {
+        for (int i = 0; i < n; i += 1) {
+            File file = new File(name(i));
+            file.getParentFile().mkdirs();
+            StringBuilder contents = new StringBuilder();
+            for (int j = 0; j < LINES; j += 1) {
+                contents.append(line(random)).append('\n');
+            }
+            Utils.writeContents(file, contents.toString());
+        }
+    }
+
+    /** Generates round ROUND of the history. */
+    private void generateRound(int round) {
+        for (int b = 1; b <= branches; b += 1) {
+            int owner = b;
+            checkout(branch(owner));
+            run(repo -> {
+                for (int c = 0; c < CHANGES; c += 1) {
+                    repo.add(modify(owner));
+                }
+                repo.commit("round " + round + " on " + branch(owner));
+            });
+        }
+        checkout("master");
+        run(repo -> {
+            repo.add(modify(0));
+            repo.commit("round " + round + " on master");
+        });
+        for (int b = 1; b <= branches; b += 1) {
+            String branch = branch(b);
+            run(repo -> repo.merge(branch));
+        }
+    }
+
+    /** Runs COMMAND on a freshly opened Repo and saves it, as one gitlet
+     *  command would.  Errors the command reports are ignored. */
+    static void run(Consumer<Repo> command) {
+        Repo repo = new Repo();
+        try {
+            command.accept(repo);
+        } catch (GitletException excp) {
+            return;
+        }
+        repo.save();
+    }
+
+    /** Checks out BRANCH. */
+    static void checkout(String branch) {
+        run(repo -> repo.checkout(List.of(branch)));
+    }
+
+    /** Returns the name of generated branch B, where branch 0 is
+     *  master. */
+    static String branch(int b) {
+        return b == 0 ? "master" : "branch" + b;
+    }
+
+    /** Returns the path of generated file I. */
+    static String name(int i) {
+        return String.format("%s/d%03d/f%05d.txt", DATA, i / DIR_SIZE, i);
+    }
+
+    /** Changes one line of a file belonging to branch OWNER, where
+     *  master is 0, and returns its path.  Each branch owns the files
+     *  whose numbers are OWNER modulo the number of branches plus
+     *  one, so branches never change the same file. */
+    String modify(int owner) {
+        int stride = branches + 1;
+        int count = Math.max(1, (files - owner + stride - 1) / stride);
+        int i = Math.min(files - 1, owner + stride * _random.nextInt(count));
+        String name = name(i);
+        File file = new File(name);
+        List<String> lines = new ArrayList<>(
+            List.of(Utils.readContentsAsString(file).split("\n")));
+        lines.set(_random.nextInt(lines.size()), line(_random));
+        Utils.writeContents(file, String.join("\n", lines) + "\n");
+        return name;
+    }
+
+    /** Returns a line of text taken from RANDOM. */
+    static String line(Random random) {
+        return "line " + Long.toHexString(random.nextLong());
+    }
+
+    /** Deletes the file or directory tree at PATH, if it exists. */
+    static void deleteTree(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder())
+                     .toArray(Path[]::new)) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    /** Source of the generated contents. */
+    Random _random;
+}
@@ -0,0 +1,60 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of hashing file contents, which need no repository.
+ *  @author Kevin Ren
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HashBench {
+
+    /** Size of the hashed file in bytes. */
+    @Param({ "4096", "1048576", "67108864" })
+    public int size;
+
+    /** Writes a file of SIZE random bytes to hash. */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        _file = File.createTempFile("gitlet-bench", ".bin");
+        byte[] contents = new byte[size];
+        new Random(size).nextBytes(contents);
+        Utils.writeContents(_file, contents);
+    }
+
+    /** Deletes the hashed file. */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _file.delete();
+    }
+
+    /** Hashes the file as add and status do. */
+    @Benchmark
+    public String blob() {
+        return new Blob(_file.getPath()).id();
+    }
+
+    /** The file hashed. */
+    private File _file;
+}
@@ -0,0 +1,58 @@
+package gitlet;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of commands that only read the history of a generated
+ *  repository.
+ *  @author Kevin Ren
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HistoryBench extends GeneratedRepo {
+
+    /** Finds the heads of master and the first branch. */
+    @Setup(Level.Trial)
+    public void findHeads() {
+        Refs refs = new Refs(Repo.GITLET);
+        _master = refs.get("master");
+        _branch = refs.get(branch(1));
+    }
+
+    /** Runs log on master, whose history takes in every branch. */
+    @Benchmark
+    public void log() {
+        run(Repo::log);
+    }
+
+    /** Finds the split point of master and a branch, as merge does,
+     *  with a commit graph read afresh from its file. */
+    @Benchmark
+    public String lca() {
+        ObjectStore commits =
+            new ObjectStore(Utils.join(Repo.GITLET, "commits"), 0);
+        CommitGraph graph = new CommitGraph(
+            new File(Repo.GITLET, "commit-graph"),
+            id -> commits.contains(id) ? Commit.decode(commits.get(id))
+                : null);
+        return graph.mergeBase(_master, _branch);
+    }
+
+    /** Head of master. */
+    private String _master;
+    /** Head of the first branch. */
+    private String _branch;
+}
@@ -0,0 +1,46 @@
+package gitlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of merging a branch with new changes into master.
+ *  @author Kevin Ren
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MergeBench extends GeneratedRepo {
+
+    /** Commits a change to the first branch and one to master, so that
+     *  there is something to merge. */
+    @Setup(Level.Invocation)
+    public void diverge() {
+        checkout(branch(1));
+        run(repo -> {
+            repo.add(modify(1));
+            repo.commit("benchmark branch change");
+        });
+        checkout("master");
+        run(repo -> {
+            repo.add(modify(0));
+            repo.commit("benchmark master change");
+        });
+    }
+
+    /** Merges the first branch into master. */
+    @Benchmark
+    public void merge() {
+        run(repo -> repo.merge(branch(1)));
+    }
+}
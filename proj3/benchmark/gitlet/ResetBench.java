@@ -0,0 +1,89 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of resetting between two commits of a large snapshot.  The
+ *  repository, generated in the current directory as GeneratedRepo
+ *  describes, has a commit of FILES files and one after it changing
+ *  CHANGED of them, so each reset writes those files and checks all
+ *  the others.  CHANGED stays the same across the sizes of snapshot, so
+ *  that the times show how reset grows with the size of the tree alone.
+ *  @author Kevin Ren
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ResetBench {
+
+    /** Number of files in the snapshot. */
+    @Param({ "1000", "5000", "10000" })
+    public int files;
+    /** Number of files the second commit changes. */
+    @Param({ "100" })
+    public int changed;
+
+    /** Generates the repository, and silences the commands' output. */
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        GeneratedRepo.prepare();
+        Random random = new Random(files * 31L + changed);
+        new Repo().init();
+        GeneratedRepo.writeFiles(files, random);
+        GeneratedRepo.run(repo -> {
+            for (int i = 0; i < files; i += 1) {
+                repo.add(GeneratedRepo.name(i));
+            }
+            repo.commit("base");
+        });
+        _base = headId();
+        GeneratedRepo.run(repo -> {
+            for (int i = 0; i < changed; i += 1) {
+                String name = GeneratedRepo.name(i * files / changed);
+                Utils.writeContents(new File(name), "changed " + i + "\n");
+                repo.add(name);
+            }
+            repo.commit("changed");
+        });
+        _changed = headId();
+    }
+
+    /** Resets to the first commit or the second, whichever is not
+     *  current. */
+    @Benchmark
+    public void reset() {
+        _atBase = !_atBase;
+        String id = _atBase ? _base : _changed;
+        GeneratedRepo.run(repo -> repo.reset(id));
+    }
+
+    /** Returns the id of master's head commit. */
+    private static String headId() {
+        return new Refs(Repo.GITLET).get("master");
+    }
+
+    /** Id of the commit of the generated files. */
+    private String _base;
+    /** Id of the commit changing some of them. */
+    private String _changed;
+    /** True iff the first commit is checked out. */
+    private boolean _atBase;
+}
@@ -0,0 +1,115 @@
+/* A gitlet client that sends its command to the gitlet daemon serving
+ * the current directory, so that the command runs without starting a
+ * JVM.  Each argument is written to the daemon's socket,
+ * .gitlet/daemon.sock, followed by a NUL byte; the client then shuts
+ * down its side of the connection and copies whatever the daemon
+ * writes back to standard output.  When no daemon is listening, and for
+ * the daemon and batch commands, which manage the repository
+ * themselves, the client runs java gitlet.Main instead, with the class
+ * path in GITLET_CLASSPATH or the one it was compiled with.
+ * @author Kevin Ren
+ */
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <unistd.h>
+#include <sys/socket.h>
+#include <sys/un.h>
+
+#ifndef CLASSPATH
+#define CLASSPATH "."
+#endif
+
+/* The socket the daemon listens on. */
+#define SOCKET ".gitlet/daemon.sock"
+
+/* Size of the buffer used to copy the daemon's output. */
+#define BUFFER_SIZE 65536
+
+/* Returns a connection to the daemon, or -1 if none is listening. */
+static int
+daemon_connect(void)
+{
+    struct sockaddr_un addr;
+    int fd = socket(AF_UNIX, SOCK_STREAM, 0);
+    if (fd < 0) {
+        return -1;
+    }
+    memset(&addr, 0, sizeof addr);
+    addr.sun_family = AF_UNIX;
+    strncpy(addr.sun_path, SOCKET, sizeof addr.sun_path - 1);
+    if (connect(fd, (struct sockaddr *) &addr, sizeof addr) < 0) {
+        close(fd);
+        return -1;
+    }
+    return fd;
+}
+
+/* Writes the LEN bytes at DATA to FD, returning 0 on success. */
+static int
+write_all(int fd, const char *data, size_t len)
+{
+    while (len > 0) {
+        ssize_t n = write(fd, data, len);
+        if (n < 0) {
+            return -1;
+        }
+        data += n;
+        len -= n;
+    }
+    return 0;
+}
+
+/* Runs java gitlet.Main with the ARGC - 1 arguments after ARGV[0]. */
+static void
+run_java(int argc, char **argv)
+{
+    const char *classpath = getenv("GITLET_CLASSPATH");
+    char **args = calloc(argc + 4, sizeof *args);
+    if (args == NULL) {
+        perror("gitlet");
+        exit(1);
+    }
+    args[0] = "java";
+    args[1] = "-cp";
+    args[2] = (char *) (classpath != NULL ? classpath : CLASSPATH);
+    args[3] = "gitlet.Main";
+    memcpy(args + 4, argv + 1, (argc - 1) * sizeof *args);
+    execvp("java", args);
+    perror("gitlet: java");
+    exit(1);
+}
+
+int
+main(int argc, char **argv)
+{
+    char buffer[BUFFER_SIZE];
+    ssize_t n;
+    int fd;
+    int i;
+
+    if (argc > 1 && (strcmp(argv[1], "daemon") == 0
+                     || strcmp(argv[1], "batch") == 0)) {
+        run_java(argc, argv);
+    }
+    fd = daemon_connect();
+    if (fd < 0) {
+        run_java(argc, argv);
+    }
+    for (i = 1; i < argc; i += 1) {
+        if (write_all(fd, argv[i], strlen(argv[i]) + 1) < 0) {
+            perror("gitlet");
+            return 1;
+        }
+    }
+    shutdown(fd, SHUT_WR);
+    while ((n = read(fd, buffer, sizeof buffer)) > 0) {
+        if (write_all(STDOUT_FILENO, buffer, n) < 0) {
+            perror("gitlet");
+            return 1;
+        }
+    }
+    close(fd);
+    return n < 0;
+}
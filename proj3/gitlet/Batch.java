@@ -0,0 +1,155 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Runs a script of gitlet commands in one process, on one Repo.
+ *
+ *  The script has one command per line, written as on a shell's command
+ *  line without the program name: words are separated by blanks, and
+ *  single or double quotes make one word of what they enclose, as in
+ *      commit "Fix the parser"
+ *  Inside double quotes and outside quotes a backslash stands for the
+ *  character after it.  Blank lines and lines starting with # are
+ *  skipped.
+ *
+ *  The repository is saved only at the end of the script, and after
+ *  every batch.checkpoint commands if that setting is positive, rather
+ *  than after each command.  A command that changes the settings is
+ *  saved at once, and the rest of the script runs on a Repo opened
+ *  afresh, so that it sees the new settings.  A command that fails
+ *  reports its error as it would on its own, and the script carries on
+ *  after it on a Repo opened afresh, so that whatever the command
+ *  changed in memory before failing is never saved.  The commands run
+ *  since the last save are discarded with it; a batch.checkpoint of 1
+ *  keeps every command that succeeds.  The WriteLock is held for the
+ *  whole script.
+ *  @author Kevin Ren
+ */
+class Batch {
+
+    /** Runs the batch command with OPERANDS: the commands in the file
+     *  named by the one operand, or on the standard input if there is
+     *  none. */
+    static void start(String... operands) {
+        if (!Main.initialized()) {
+            Utils.message("Not in an initialized Gitlet directory.");
+            throw new GitletException();
+        } else if (operands.length > 1) {
+            Utils.message("Incorrect operands.");
+            throw new GitletException();
+        }
+        Reader reader;
+        if (operands.length == 0) {
+            reader = new InputStreamReader(System.in, StandardCharsets.UTF_8);
+        } else if (new File(operands[0]).isFile()) {
+            try {
+                reader = Files.newBufferedReader(Paths.get(operands[0]),
+                                                 StandardCharsets.UTF_8);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        } else {
+            Utils.message("File does not exist.");
+            throw new GitletException();
+        }
+        WriteLock lock = WriteLock.acquire();
+        try (BufferedReader lines = new BufferedReader(reader)) {
+            Repo repo = new Repo();
+            repo.checkFormat();
+            run(repo, lines);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            lock.close();
+        }
+    }
+
+    /** Runs the commands read from LINES on REPO, saving it every
+     *  checkpoint, after each change to the settings and at the end,
+     *  and discarding it after each command that fails. */
+    private static void run(Repo repo, BufferedReader lines)
+        throws IOException {
+        int checkpoint = repo.checkpoint();
+        int unsaved = 0;
+        int number = 0;
+        for (String line = lines.readLine(); line != null;
+             line = lines.readLine()) {
+            number += 1;
+            if (line.strip().startsWith("#")) {
+                continue;
+            }
+            List<String> words = words(line);
+            if (words == null) {
+                Utils.message("Unterminated quote on line %d.", number);
+                continue;
+            } else if (words.isEmpty()) {
+                continue;
+            }
+            try {
+                Main.run(words.toArray(new String[0]), repo, false);
+            } catch (GitletException excp) {
+                repo = new Repo();
+                checkpoint = repo.checkpoint();
+                unsaved = 0;
+                continue;
+            }
+            unsaved += 1;
+            if (repo.settingsChanged()) {
+                repo.save();
+                repo = new Repo();
+                checkpoint = repo.checkpoint();
+                unsaved = 0;
+            } else if (unsaved == checkpoint) {
+                repo.save();
+                unsaved = 0;
+            }
+        }
+        repo.save();
+    }
+
+    /** Returns the words of LINE, or null if it has an unterminated
+     *  quote. */
+    private static List<String> words(String line) {
+        ArrayList<String> words = new ArrayList<>();
+        StringBuilder word = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+                continue;
+            }
+            if (word == null) {
+                word = new StringBuilder();
+            }
+            if (c == '\\' && quote != '\'' && i + 1 < line.length()) {
+                i += 1;
+                word.append(line.charAt(i));
+            } else if (quote == 0 && (c == '"' || c == '\'')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            } else {
+                word.append(c);
+            }
+        }
+        if (quote != 0) {
+            return null;
+        } else if (word != null) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+}
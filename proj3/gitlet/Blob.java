@@ -1,37 +1,84 @@
 package gitlet;
 
 import java.io.File;
-import java.io.Serializable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 
-/** Blob class representing the contents of a file.
+/** Blob class representing the contents of a file.  A blob's id depends
+ *  only on its contents, so identical files share one stored object.
+ *  The contents are hashed through a fixed-size buffer, or for large
+ *  files through memory mappings, and never held in memory, so files
+ *  of any size can be added.
  * @author Kevin Ren */
 
-public class Blob implements Serializable {
+public class Blob {
+
+    /** Size of the buffer used to hash file contents. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Size above which a file is hashed through memory mappings of it
+     *  rather than read into a buffer. */
+    private static final long MAP_THRESHOLD = 1 << 20;
+    /** Most bytes of a file mapped at once. */
+    private static final long MAP_SIZE = 1 << 26;
+    /** Bytes hashed ahead of the contents. */
+    private static final byte[] TYPE = "blob".getBytes(StandardCharsets.UTF_8);
+    /** Each thread's buffer for reading files to hash.  It is direct,
+     *  so reads go straight into it, and it is reused because hashing
+     *  the working directory hashes many small files. */
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
 
     /** Constructor for a blob with
      * file has NAME. */
     public Blob(String name) {
-        File file = new File(name);
         _name = name;
-        _contents = Utils.readContents(file);
-        _string = Utils.readContentsAsString(file);
-        _sha1 = calcSHA();
+        _sha1 = calcSHA(new File(name));
     }
 
-    /** Returns the SHA-1 for the blob. */
-    private String calcSHA() {
-        String type = "Blob";
-        return Utils.sha1(_name, _contents, type);
+    /** Returns the SHA-1 for the blob, whose contents are in FILE. */
+    private static String calcSHA(File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        MessageDigest md = digest();
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            long size = channel.size();
+            if (size > MAP_THRESHOLD) {
+                for (long pos = 0; pos < size; pos += MAP_SIZE) {
+                    md.update(channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                                          Math.min(MAP_SIZE, size - pos)));
+                }
+            } else {
+                ByteBuffer buffer = BUFFER.get();
+                buffer.clear();
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    md.update(buffer);
+                    buffer.clear();
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return Utils.toHex(md.digest());
     }
 
-    /** Returns the contents. */
-    public byte[] contents() {
-        return _contents;
+    /** Returns this thread's SHA-1 digest, as Utils.sha1Digest, ready
+     *  to be given the contents of a blob to compute its id. */
+    static MessageDigest digest() {
+        MessageDigest md = Utils.sha1Digest();
+        md.update(TYPE);
+        return md;
     }
 
-    /** Returns the contents as a string. */
-    public String string() {
-        return _string;
+    /** Returns the id of a blob whose contents are CONTENTS. */
+    static String id(byte[] contents) {
+        MessageDigest md = digest();
+        md.update(contents);
+        return Utils.toHex(md.digest());
     }
 
     /** Returns the name. */
@@ -48,9 +95,5 @@ public class Blob implements Serializable {
     private String _sha1;
     /** Name of the blob. */
     private String _name;
-    /** Contents of File. */
-    private byte[] _contents;
-    /** Contents of File as a string. */
-    private String _string;
 
 }
@@ -1,33 +1,67 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Map;
 import java.util.List;
+import java.util.Map;
 
 /** Commit class representing the contents of a commit.
- * Includes blobs and tree.
+ * Includes the id of the top Tree of the snapshot.  A merge commit has
+ * a second parent, the head of the branch merged in.
+ *
+ * Commits are stored in a compact versioned binary form (see encode).
+ * They remain Serializable only so that migrate can read commits that
+ * older versions of gitlet wrote with Java serialization; those of the
+ * first version are read through Legacy.  Commits of those versions,
+ * and of version 1 of the encoding, hold a flat map of file names to
+ * blob ids instead of a tree.
  * @author Kevin Ren */
 
 public class Commit implements Serializable {
 
+    /** Serialization id of the last Java-serialized commit format. */
+    private static final long serialVersionUID = 790180757689682500L;
+    /** Magic number at the start of an encoded commit. */
+    private static final int MAGIC = 0x474c434d;
+    /** Version of the commit encoding. */
+    private static final int VERSION = 3;
+    /** Version of the commit encoding that held a single parent. */
+    private static final int SINGLE_VERSION = 2;
+    /** Version of the commit encoding that held a flat map of files. */
+    private static final int FLAT_VERSION = 1;
+    /** Bytes starting the encoding from which commit ids are
+     *  computed. */
+    private static final byte[] ID_TYPE =
+        "commit\0".getBytes(StandardCharsets.UTF_8);
+    /** First two bytes of every Java serialization stream. */
+    private static final int JAVA_MAGIC = 0xaced;
+    /** Format of timestamps. */
+    private static final String DATE_FORMAT = "EEE MMM d HH:mm:ss yyyy Z";
+
     /** Constructor for Commit containing the data
-     * LOG, PID, MAP, BRANCH.*/
-    public Commit(String log, String pid, HashMap<String, Blob> map,
+     * LOG, PID, TREE, BRANCH, with second parent MERGEPID if it is a
+     * merge commit and null otherwise. */
+    public Commit(String log, String pid, String mergePid, String tree,
                   String branch) {
         _log = log;
         _pid = pid;
-        _map = map;
+        _mergePid = mergePid;
+        _tree = tree;
         _branch = branch;
-        _contents = new ArrayList<>();
-        for (Map.Entry<String, Blob> entry : map.entrySet()) {
-            _contents.add(entry.getValue().contents());
-        }
-        _timeStamp = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z")
-                .format(new Date());
+        _time = System.currentTimeMillis();
+        _timeStamp = new SimpleDateFormat(DATE_FORMAT)
+                .format(new Date(_time));
         _sha1 = calcSHA();
     }
 
@@ -38,20 +72,151 @@ public class Commit implements Serializable {
         _log = log;
         _branch = branch;
         _pid = null;
+        _tree = new Tree().id();
+        _time = 0;
         _timeStamp = "Wed Dec 31 16:00:00 1969 -0800";
         _sha1 = uid();
     }
 
-    /** Returns the SHA-1 calculated for the commit. */
+    /** An empty commit, to be filled in by decode. */
+    private Commit() {
+    }
+
+    /** Returns a commit in an older format with id ID, parent PID,
+     *  message LOG, timestamp TIMESTAMP and branch BRANCH, whose snapshot
+     *  is FILES, a map of file names to blob ids.  Its time is read from
+     *  TIMESTAMP. */
+    static Commit flat(String id, String pid, String log, String timeStamp,
+                       String branch, Map<String, String> files) {
+        Commit commit = new Commit();
+        commit._sha1 = id;
+        commit._pid = pid;
+        commit._log = log;
+        commit._timeStamp = timeStamp;
+        commit._branch = branch;
+        commit._map = new HashMap<>(files);
+        try {
+            commit._time =
+                new SimpleDateFormat(DATE_FORMAT).parse(timeStamp).getTime();
+        } catch (ParseException excp) {
+            Utils.message("Unrecognized commit format.");
+            throw new GitletException();
+        }
+        return commit;
+    }
+
+    /** Returns the commit encoded in the stream IN, which is left
+     *  positioned just after it. */
+    static Commit decode(DataInputStream in) throws IOException {
+        int version = in.readInt() == MAGIC ? in.readInt() : -1;
+        if (version != VERSION && version != SINGLE_VERSION
+            && version != FLAT_VERSION) {
+            Utils.message("Unrecognized commit format.");
+            throw new GitletException();
+        }
+        Commit commit = new Commit();
+        commit._sha1 = readId(in);
+        commit._pid = in.readBoolean() ? readId(in) : null;
+        if (version == VERSION && in.readBoolean()) {
+            commit._mergePid = readId(in);
+        }
+        commit._time = in.readLong();
+        commit._timeStamp = in.readUTF();
+        commit._branch = in.readUTF();
+        byte[] log = new byte[in.readInt()];
+        in.readFully(log);
+        commit._log = new String(log, StandardCharsets.UTF_8);
+        if (version != FLAT_VERSION) {
+            commit._tree = readId(in);
+            return commit;
+        }
+        commit._map = new HashMap<>();
+        for (int n = in.readInt(); n > 0; n -= 1) {
+            String name = in.readUTF();
+            commit._map.put(name, readId(in));
+        }
+        return commit;
+    }
+
+    /** Returns the commit encoded in BYTES. */
+    static Commit decode(byte[] bytes) {
+        try {
+            return decode(new DataInputStream(
+                              new ByteArrayInputStream(bytes)));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true iff BYTES hold a commit written with Java
+     *  serialization by an older version of gitlet. */
+    static boolean isLegacy(byte[] bytes) {
+        return bytes.length >= 2
+            && ((bytes[0] & 0xff) << 8 | (bytes[1] & 0xff)) == JAVA_MAGIC;
+    }
+
+    /** Returns the encoding of this commit: a header, then its id,
+     *  parents, time, timestamp, branch, message and tree, with ids as
+     *  raw 20-byte SHA-1s. */
+    byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(Utils.fromHex(_sha1));
+            out.writeBoolean(_pid != null);
+            if (_pid != null) {
+                out.write(Utils.fromHex(_pid));
+            }
+            out.writeBoolean(_mergePid != null);
+            if (_mergePid != null) {
+                out.write(Utils.fromHex(_mergePid));
+            }
+            out.writeLong(_time);
+            out.writeUTF(_timeStamp);
+            out.writeUTF(_branch);
+            byte[] log = _log.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(log.length);
+            out.write(log);
+            out.write(Utils.fromHex(_tree));
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(
+                "Internal error encoding commit.");
+        }
+    }
+
+    /** Reads a raw SHA-1 id from IN and returns it in hexadecimal. */
+    private static String readId(DataInputStream in) throws IOException {
+        byte[] id = new byte[Utils.UID_LENGTH / 2];
+        in.readFully(id);
+        return Utils.toHex(id);
+    }
+
+    /** Returns the SHA-1 calculated for the commit: the hash of a
+     *  canonical encoding of its tree, parents, time, timestamp and log
+     *  message.  Ids are raw 20-byte SHA-1s and every variable-length
+     *  field is preceded by its length, so that no two commits have the
+     *  same encoding, and the encoding's size does not depend on the
+     *  size of the snapshot. */
     private String calcSHA() {
-        String type = "Commit";
-        ArrayList<Object> metadata = new ArrayList<>();
-        metadata.add(_log);
-        metadata.add(_timeStamp);
-        metadata.add(_map.toString());
-        metadata.add(_pid);
-        metadata.add(type);
-        return Utils.sha1(metadata);
+        List<String> parents = parents();
+        byte[] timeStamp = _timeStamp.getBytes(StandardCharsets.UTF_8);
+        byte[] log = _log.getBytes(StandardCharsets.UTF_8);
+        int idSize = Utils.UID_LENGTH / 2;
+        ByteBuffer identity = ByteBuffer.allocate(
+            ID_TYPE.length + idSize * (1 + parents.size()) + 1 + 8
+            + 4 + timeStamp.length + 4 + log.length);
+        identity.put(ID_TYPE).put(Utils.fromHex(_tree));
+        identity.put((byte) parents.size());
+        parents.forEach(pid -> identity.put(Utils.fromHex(pid)));
+        identity.putLong(_time);
+        identity.putInt(timeStamp.length).put(timeStamp);
+        identity.putInt(log.length).put(log);
+        identity.flip();
+        return Utils.sha1(identity);
     }
 
     /** Returns the universal SHA-1. */
@@ -63,11 +228,6 @@ public class Commit implements Serializable {
         return Utils.sha1(initial);
     }
 
-    /** Returns the contents of the commit. */
-    public ArrayList<byte[]> contents() {
-        return _contents;
-    }
-
     /** Returns the SHA-1. */
     public String id() {
         return _sha1;
@@ -78,11 +238,32 @@ public class Commit implements Serializable {
         return _pid;
     }
 
+    /** Returns the id of the second parent of a merge commit, or null
+     *  if this is not one. */
+    public String mergePid() {
+        return _mergePid;
+    }
+
+    /** Returns the ids of the parents, first parent first. */
+    public List<String> parents() {
+        if (_pid == null) {
+            return List.of();
+        } else if (_mergePid == null) {
+            return List.of(_pid);
+        }
+        return List.of(_pid, _mergePid);
+    }
+
     /** Returns timestamp. */
     public String timeStamp() {
         return _timeStamp;
     }
 
+    /** Returns the commit time in milliseconds since the epoch. */
+    public long time() {
+        return _time;
+    }
+
     /** Returns log. */
     public String log() {
         return _log;
@@ -93,24 +274,54 @@ public class Commit implements Serializable {
         return _branch;
     }
 
-    /** Returns map. */
-    public HashMap<String, Blob> map() {
+    /** Returns the id of the top tree of the snapshot, or null for a
+     *  commit in an older format that holds a flat map instead. */
+    public String tree() {
+        return _tree;
+    }
+
+    /** Returns the map of file names to blob ids of a commit in an
+     *  older format, which is empty for an initial commit and null if
+     *  this commit has a tree. */
+    HashMap<String, String> flatMap() {
+        if (_tree == null && _map == null) {
+            return new HashMap<>();
+        }
         return _map;
     }
 
+    /** Returns a copy of this commit, with the same id, whose snapshot
+     *  is the tree with id TREE. */
+    Commit withTree(String tree) {
+        Commit commit = new Commit();
+        commit._log = _log;
+        commit._timeStamp = _timeStamp;
+        commit._time = _time;
+        commit._sha1 = _sha1;
+        commit._pid = _pid;
+        commit._mergePid = _mergePid;
+        commit._branch = _branch;
+        commit._tree = tree;
+        return commit;
+    }
+
 
     /** Log message for the commit. */
     private String _log;
     /** The timestamp of the commit. */
     private String _timeStamp;
-    /** Mapping of files to blobs. */
-    private HashMap<String, Blob> _map;
+    /** The commit time in milliseconds since the epoch. */
+    private long _time;
+    /** Mapping of file names to blob ids, in older formats. */
+    private HashMap<String, String> _map;
+    /** Id of the top tree of the snapshot. */
+    private String _tree;
     /** SHA-1 of the commit. */
     private String _sha1;
     /** Parent identifier. */
     private String _pid;
+    /** Second parent identifier, or null if not a merge commit. */
+    private String _mergePid;
     /** Branch location. */
     private String _branch;
-    /** Contents of the blobs in the commit. */
-    private ArrayList<byte[]> _contents;
 }
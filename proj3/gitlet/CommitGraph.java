@@ -0,0 +1,534 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/** A cache of the shape of the commit history, so that ancestry
+ *  questions can be answered without reading any commit objects.
+ *
+ *  The file is a header followed by fixed-size records, one per commit,
+ *  each holding the commit's id, the positions of the records of its
+ *  parent and its merge parent (-1 for none), its generation number (1
+ *  for a root, otherwise one more than its parents' greatest) and its
+ *  commit time.  Records are appended as commits are made, so parents
+ *  always precede their children.  The file is read through a memory
+ *  mapping.
+ *
+ *  Since the records are in the order the commits were made, a second
+ *  file, the lookup file, finds the record of a given id.  It is a
+ *  header, a fan-out table, the ids of the first records in sorted
+ *  order and then their positions, so a lookup is a bisection of the
+ *  ids starting with the same byte, as in IdIndex.  Records appended
+ *  since the lookup file was written are scanned in full; once there
+ *  are more than MAX_UNSORTED of them it is rewritten.
+ *
+ *  Walks of the history visit commits from a priority queue, highest
+ *  generation first.  Every child of a commit has a higher generation
+ *  than it, so a commit is only taken from the queue once everything
+ *  reachable that descends from it has been, which lets a walk stop as
+ *  soon as it has its answer instead of going on to the root.
+ *
+ *  Being a cache, the graph may lag behind the commit store, e.g. after
+ *  a crash.  Any commit asked about that has no record yet is read
+ *  from the store and recorded then, along with any missing ancestors.
+ *  @author Kevin Ren
+ */
+class CommitGraph {
+
+    /** Magic number at the start of a commit-graph file. */
+    private static final int MAGIC = 0x474c4347;
+    /** Version of the file format. */
+    private static final int VERSION = 2;
+    /** Size of the file header in bytes. */
+    private static final int HEADER = 8;
+    /** Size of a commit id in bytes. */
+    private static final int ID_SIZE = Utils.UID_LENGTH / 2;
+    /** Size of a record in bytes. */
+    private static final int RECORD = ID_SIZE + 4 + 4 + 4 + 8;
+    /** Magic number at the start of a lookup file. */
+    private static final int LOOKUP_MAGIC = 0x474c474c;
+    /** Version of the lookup file format. */
+    private static final int LOOKUP_VERSION = 1;
+    /** Number of entries in the fan-out table of the lookup file. */
+    private static final int FANOUT = 256;
+    /** Size of the lookup file header and fan-out table in bytes. */
+    private static final int LOOKUP_HEADER = 12 + 4 * FANOUT;
+    /** Most records left out of the lookup file. */
+    private static final int MAX_UNSORTED = 256;
+    /** Flag of a commit reachable from the first commit of a
+     *  merge-base search. */
+    private static final int FROM_FIRST = 1;
+    /** Flag of a commit reachable from the second commit of a
+     *  merge-base search. */
+    private static final int FROM_SECOND = 2;
+    /** Flag of a commit that is an ancestor of a common ancestor found
+     *  by a merge-base search, and so not a latest one. */
+    private static final int STALE = 4;
+
+    /** The commit graph stored in FILE, which need not exist yet.
+     *  LOADER returns the commit with a given id, or null if there is
+     *  none, and is used to fill in commits the file lacks. */
+    CommitGraph(File file, Function<String, Commit> loader) {
+        _file = file;
+        _lookupFile = Utils.join(file.getParentFile(),
+                                 file.getName() + ".lookup");
+        _loader = loader;
+        _positions = new HashMap<>();
+        _ids = new ArrayList<>();
+        _parents = new ArrayList<>();
+        _mergeParents = new ArrayList<>();
+        _generations = new ArrayList<>();
+        _times = new ArrayList<>();
+        map();
+    }
+
+    /** Returns the position of the record for the commit with id ID,
+     *  recording it first if necessary, or -1 if there is no such
+     *  commit. */
+    int position(String id) {
+        int pos = find(id);
+        if (pos != -1) {
+            return pos;
+        }
+        Commit first = _loader.apply(id);
+        if (first == null) {
+            return -1;
+        }
+        ArrayDeque<Commit> missing = new ArrayDeque<>();
+        missing.push(first);
+        while (!missing.isEmpty()) {
+            Commit commit = missing.peek();
+            Commit parent = null;
+            for (String pid : commit.parents()) {
+                if (find(pid) == -1) {
+                    parent = _loader.apply(pid);
+                    if (parent == null) {
+                        return -1;
+                    }
+                    break;
+                }
+            }
+            if (parent == null) {
+                add(missing.pop());
+            } else {
+                missing.push(parent);
+            }
+        }
+        return find(id);
+    }
+
+    /** Records COMMIT, whose parents must already be recorded or be
+     *  obtainable from the loader.  Does nothing if COMMIT is already
+     *  recorded. */
+    void add(Commit commit) {
+        if (find(commit.id()) != -1) {
+            return;
+        }
+        int parent = commit.pid() == null ? -1 : position(commit.pid());
+        int merged = commit.mergePid() == null
+            ? -1 : position(commit.mergePid());
+        int generation = 1;
+        for (int p : new int[] { parent, merged }) {
+            if (p != -1) {
+                generation = Math.max(generation, generation(p) + 1);
+            }
+        }
+        _positions.put(commit.id(), size());
+        _ids.add(commit.id());
+        _parents.add(parent);
+        _mergeParents.add(merged);
+        _generations.add(generation);
+        _times.add(commit.time());
+    }
+
+    /** Returns the number of recorded commits. */
+    int size() {
+        return _mappedCount + _ids.size();
+    }
+
+    /** Returns the id of the commit at position POS. */
+    String id(int pos) {
+        if (pos >= _mappedCount) {
+            return _ids.get(pos - _mappedCount);
+        }
+        byte[] id = new byte[ID_SIZE];
+        _buffer.get(offset(pos), id);
+        return Utils.toHex(id);
+    }
+
+    /** Returns the position of the parent of the commit at position
+     *  POS, or -1 if it has none. */
+    int parent(int pos) {
+        if (pos >= _mappedCount) {
+            return _parents.get(pos - _mappedCount);
+        }
+        return _buffer.getInt(offset(pos) + ID_SIZE);
+    }
+
+    /** Returns the position of the merge parent of the commit at
+     *  position POS, or -1 if it is not a merge commit. */
+    int mergeParent(int pos) {
+        if (pos >= _mappedCount) {
+            return _mergeParents.get(pos - _mappedCount);
+        }
+        return _buffer.getInt(offset(pos) + ID_SIZE + 4);
+    }
+
+    /** Returns the generation number of the commit at position POS. */
+    int generation(int pos) {
+        if (pos >= _mappedCount) {
+            return _generations.get(pos - _mappedCount);
+        }
+        return _buffer.getInt(offset(pos) + ID_SIZE + 8);
+    }
+
+    /** Returns the commit time of the commit at position POS. */
+    long time(int pos) {
+        if (pos >= _mappedCount) {
+            return _times.get(pos - _mappedCount);
+        }
+        return _buffer.getLong(offset(pos) + ID_SIZE + 12);
+    }
+
+    /** Returns true iff the commit with id ANCESTOR is the commit with
+     *  id DESCENDANT or one of its ancestors.  Only commits of higher
+     *  generation than ANCESTOR are looked past. */
+    boolean isAncestor(String ancestor, String descendant) {
+        int a = position(ancestor);
+        int d = position(descendant);
+        if (a == -1 || d == -1) {
+            return false;
+        }
+        int stop = generation(a);
+        PriorityQueue<Integer> queue = queue();
+        HashSet<Integer> seen = new HashSet<>();
+        queue.add(d);
+        seen.add(d);
+        while (!queue.isEmpty()) {
+            int pos = queue.poll();
+            if (pos == a) {
+                return true;
+            }
+            for (int p : new int[] { parent(pos), mergeParent(pos) }) {
+                if (p != -1 && generation(p) >= stop && seen.add(p)) {
+                    queue.add(p);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns the id of the latest common ancestor of the commits with
+     *  ids ID1 and ID2, or null if they have none.  Of several such
+     *  ancestors, as after criss-cross merges, the first mergeBases
+     *  returns is chosen. */
+    String mergeBase(String id1, String id2) {
+        List<String> bases = mergeBases(id1, id2);
+        return bases.isEmpty() ? null : bases.get(0);
+    }
+
+    /** Returns the ids of the latest common ancestors of the commits
+     *  with ids ID1 and ID2: those that are ancestors of both and of no
+     *  other such ancestor.  There are several only after criss-cross
+     *  merges; they come highest generation first, and of those the
+     *  latest.  Ancestors of the two are marked with the commits they
+     *  descend from, highest generation first.  Each found to descend
+     *  from both is a candidate, and marks its own ancestors as stale,
+     *  so the walk stops once only stale commits are left to visit. */
+    List<String> mergeBases(String id1, String id2) {
+        ArrayList<String> result = new ArrayList<>();
+        int x = position(id1);
+        int y = position(id2);
+        if (x == -1 || y == -1) {
+            return result;
+        }
+        HashMap<Integer, Integer> flags = new HashMap<>();
+        PriorityQueue<Integer> queue = queue();
+        flags.put(x, FROM_FIRST);
+        flags.merge(y, FROM_SECOND, (f, g) -> f | g);
+        queue.add(x);
+        queue.add(y);
+        ArrayList<Integer> candidates = new ArrayList<>();
+        while (queue.stream().anyMatch(p -> (flags.get(p) & STALE) == 0)) {
+            int pos = queue.poll();
+            int mark = flags.get(pos);
+            if (mark == (FROM_FIRST | FROM_SECOND)) {
+                candidates.add(pos);
+                mark |= STALE;
+                flags.put(pos, mark);
+            }
+            for (int p : new int[] { parent(pos), mergeParent(pos) }) {
+                if (p == -1) {
+                    continue;
+                }
+                int old = flags.getOrDefault(p, 0);
+                if ((old | mark) != old) {
+                    flags.put(p, old | mark);
+                    queue.add(p);
+                }
+            }
+        }
+        for (int c : candidates) {
+            boolean redundant = false;
+            for (int d : candidates) {
+                if (c != d && isAncestor(id(c), id(d))) {
+                    redundant = true;
+                }
+            }
+            if (!redundant) {
+                result.add(id(c));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the positions of the commit with id ID and its
+     *  ancestors, latest commit first, or none if there is no such
+     *  commit. */
+    ArrayList<Integer> history(String id) {
+        ArrayList<Integer> result = new ArrayList<>();
+        int start = position(id);
+        if (start == -1) {
+            return result;
+        }
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+            Comparator.comparingLong(this::time).reversed()
+            .thenComparing(Comparator.comparingInt(this::generation)
+                           .reversed()));
+        HashSet<Integer> seen = new HashSet<>();
+        queue.add(start);
+        seen.add(start);
+        while (!queue.isEmpty()) {
+            int pos = queue.poll();
+            result.add(pos);
+            for (int p : new int[] { parent(pos), mergeParent(pos) }) {
+                if (p != -1 && seen.add(p)) {
+                    queue.add(p);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns an empty queue of positions taking the highest
+     *  generation first, and of those the latest. */
+    private PriorityQueue<Integer> queue() {
+        return new PriorityQueue<>(
+            Comparator.comparingInt(this::generation).reversed()
+            .thenComparing(Comparator.comparingLong(this::time).reversed())
+            .thenComparing(Comparator.reverseOrder()));
+    }
+
+    /** Stages in JOURNAL the appending of the records added since the
+     *  file was read to the file. */
+    void save(Journal journal) {
+        if (_ids.isEmpty()) {
+            return;
+        }
+        ByteBuffer out = ByteBuffer.allocate(HEADER + RECORD * _ids.size());
+        if (_mappedCount == 0) {
+            out.putInt(MAGIC).putInt(VERSION);
+        }
+        for (int i = 0; i < _ids.size(); i += 1) {
+            out.put(Utils.fromHex(_ids.get(i)));
+            out.putInt(_parents.get(i)).putInt(_mergeParents.get(i));
+            out.putInt(_generations.get(i));
+            out.putLong(_times.get(i));
+        }
+        out.flip();
+        long start = _mappedCount == 0 ? 0 : offset(_mappedCount);
+        journal.write(_file, start, Arrays.copyOf(out.array(), out.limit()));
+        if (_mappedCount == 0 || size() - _lookupCount > MAX_UNSORTED) {
+            journal.replace(_lookupFile, lookup());
+        }
+        journal.afterCommit(this::map);
+    }
+
+    /** Returns the contents of a lookup file covering all records. */
+    private byte[] lookup() {
+        byte[][] ids = new byte[size()][];
+        Integer[] order = new Integer[size()];
+        for (int pos = 0; pos < size(); pos += 1) {
+            ids[pos] = Utils.fromHex(id(pos));
+            order[pos] = pos;
+        }
+        Arrays.sort(order, (x, y) -> Arrays.compareUnsigned(ids[x], ids[y]));
+        ByteBuffer out = ByteBuffer.allocate(
+            LOOKUP_HEADER + (ID_SIZE + 4) * ids.length);
+        out.putInt(LOOKUP_MAGIC).putInt(LOOKUP_VERSION).putInt(ids.length);
+        int[] counts = new int[FANOUT];
+        for (byte[] id : ids) {
+            counts[Byte.toUnsignedInt(id[0])] += 1;
+        }
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+            out.putInt(total);
+        }
+        for (int pos : order) {
+            out.put(ids[pos]);
+        }
+        for (int pos : order) {
+            out.putInt(pos);
+        }
+        return out.array();
+    }
+
+    /** Maps the file into memory, discarding it if it is not a
+     *  commit-graph file of the current version, and forgets any
+     *  records not yet written. */
+    private void map() {
+        _buffer = null;
+        _mappedCount = 0;
+        _lookup = null;
+        _lookupCount = 0;
+        _positions.clear();
+        _ids.clear();
+        _parents.clear();
+        _mergeParents.clear();
+        _generations.clear();
+        _times.clear();
+        if (!_file.isFile() || _file.length() < HEADER) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(_file.toPath())) {
+            MappedByteBuffer buffer =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION) {
+                _buffer = buffer;
+                _mappedCount = (int) ((channel.size() - HEADER) / RECORD);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        mapLookup();
+    }
+
+    /** Maps the lookup file into memory, discarding it if it is not a
+     *  lookup file of the current version or covers records the mapped
+     *  graph lacks. */
+    private void mapLookup() {
+        if (_buffer == null || !_lookupFile.isFile()
+            || _lookupFile.length() < LOOKUP_HEADER) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(_lookupFile.toPath())) {
+            MappedByteBuffer buffer =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int count = buffer.getInt(8);
+            if (buffer.getInt(0) == LOOKUP_MAGIC
+                && buffer.getInt(4) == LOOKUP_VERSION
+                && count <= _mappedCount
+                && buffer.limit() >= LOOKUP_HEADER + (ID_SIZE + 4) * count) {
+                _lookup = buffer;
+                _lookupCount = count;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the position of the record for the commit with id ID, or
+     *  -1 if it has none. */
+    private int find(String id) {
+        Integer added = _positions.get(id);
+        if (added != null) {
+            return added;
+        } else if (id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        ByteBuffer key = ByteBuffer.wrap(Utils.fromHex(id));
+        int pos = lookup(key);
+        if (pos != -1) {
+            return pos;
+        }
+        for (pos = _lookupCount; pos < _mappedCount; pos += 1) {
+            if (_buffer.slice(offset(pos), ID_SIZE).equals(key)) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the position of the record for the commit whose id is
+     *  the bytes in KEY, as found through the lookup file, or -1 if it
+     *  is not there. */
+    private int lookup(ByteBuffer key) {
+        if (_lookup == null) {
+            return -1;
+        }
+        int first = Byte.toUnsignedInt(key.get(0));
+        int lo = fanout(first - 1);
+        int hi = fanout(first);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            ByteBuffer entry =
+                _lookup.slice(LOOKUP_HEADER + mid * ID_SIZE, ID_SIZE);
+            int i = entry.mismatch(key);
+            if (i == -1) {
+                int pos = _lookup.getInt(
+                    LOOKUP_HEADER + _lookupCount * ID_SIZE + mid * 4);
+                boolean valid = pos < _mappedCount
+                    && _buffer.slice(offset(pos), ID_SIZE).equals(key);
+                return valid ? pos : -1;
+            } else if (Byte.toUnsignedInt(entry.get(i))
+                       < Byte.toUnsignedInt(key.get(i))) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the number of ids in the lookup file whose first byte is
+     *  at most B, which is 0 for B = -1. */
+    private int fanout(int b) {
+        return b < 0 ? 0 : _lookup.getInt(12 + 4 * b);
+    }
+
+    /** Returns the offset in the file of the record at position POS. */
+    private static int offset(int pos) {
+        return HEADER + RECORD * pos;
+    }
+
+    /** File holding the graph. */
+    private final File _file;
+    /** File holding the lookup table of the graph's records. */
+    private final File _lookupFile;
+    /** Reads commits missing from the graph. */
+    private final Function<String, Commit> _loader;
+    /** The mapped file, or null if there is no usable file. */
+    private MappedByteBuffer _buffer;
+    /** Number of complete records in the mapped file. */
+    private int _mappedCount;
+    /** The mapped lookup file, or null if there is no usable file. */
+    private MappedByteBuffer _lookup;
+    /** Number of records covered by the mapped lookup file. */
+    private int _lookupCount;
+    /** Positions of commits recorded since the file was read. */
+    private final HashMap<String, Integer> _positions;
+    /** Ids of commits recorded since the file was read. */
+    private final ArrayList<String> _ids;
+    /** Parent positions of commits recorded since the file was read. */
+    private final ArrayList<Integer> _parents;
+    /** Merge parent positions of commits recorded since the file was
+     *  read. */
+    private final ArrayList<Integer> _mergeParents;
+    /** Generations of commits recorded since the file was read. */
+    private final ArrayList<Integer> _generations;
+    /** Times of commits recorded since the file was read. */
+    private final ArrayList<Long> _times;
+}
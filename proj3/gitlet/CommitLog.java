@@ -0,0 +1,270 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+/** The metadata of every commit ever made, kept apart from the commit
+ *  objects so that global-log and find never read trees.
+ *
+ *  The commit-log file is an append-only sequence of records, each the
+ *  id, both parents if it is a merge, time, timestamp and message of
+ *  one commit, which global-log streams through in order.  A file in an
+ *  older format is rebuilt from the commits and replaced.  The
+ *  messages directory is an inverted index: for each distinct message,
+ *  a file named by the message's SHA-1 lists the ids of the commits
+ *  with that message, so find reads exactly one small file.
+ *
+ *  Both are appended to in place while other processes may be reading
+ *  them, so readers stop at a record or id cut short.
+ *  @author Kevin Ren
+ */
+class CommitLog {
+
+    /** Magic number at the start of a commit-log file. */
+    private static final int MAGIC = 0x474c4d4c;
+    /** Version of the file format.  Version 1 lacked the parents of
+     *  merge commits. */
+    private static final int VERSION = 2;
+
+    /** The metadata of one commit. */
+    static class Entry {
+        /** Metadata of the commit with id ID, made at TIME, with
+         *  displayed timestamp TIMESTAMP and log message MESSAGE.  PID
+         *  and MERGEPID are its parents if it is a merge commit, and
+         *  both null otherwise. */
+        Entry(String id, String pid, String mergePid, long time,
+              String timeStamp, String message) {
+            _id = id;
+            _pid = pid;
+            _mergePid = mergePid;
+            _time = time;
+            _timeStamp = timeStamp;
+            _message = message;
+        }
+
+        /** Returns the commit id. */
+        String id() {
+            return _id;
+        }
+
+        /** Returns the first parent of a merge commit, or null if the
+         *  commit is not one. */
+        String pid() {
+            return _pid;
+        }
+
+        /** Returns the second parent of a merge commit, or null if the
+         *  commit is not one. */
+        String mergePid() {
+            return _mergePid;
+        }
+
+        /** Returns the commit time in milliseconds since the epoch. */
+        long time() {
+            return _time;
+        }
+
+        /** Returns the displayed timestamp. */
+        String timeStamp() {
+            return _timeStamp;
+        }
+
+        /** Returns the log message. */
+        String message() {
+            return _message;
+        }
+
+        /** Commit id. */
+        private final String _id;
+        /** First parent of a merge commit, or null. */
+        private final String _pid;
+        /** Second parent of a merge commit, or null. */
+        private final String _mergePid;
+        /** Commit time. */
+        private final long _time;
+        /** Displayed timestamp. */
+        private final String _timeStamp;
+        /** Log message. */
+        private final String _message;
+    }
+
+    /** The commit log of the repository in directory GITLET. */
+    CommitLog(File gitlet) {
+        _file = Utils.join(gitlet, "commit-log");
+        _messages = Utils.join(gitlet, "messages");
+        _pending = new ArrayList<>();
+    }
+
+    /** Returns true iff the commit-log file exists in the current
+     *  format. */
+    boolean exists() {
+        if (!_file.isFile()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(
+                 Files.newInputStream(_file.toPath()))) {
+            return in.readInt() == MAGIC && in.readInt() == VERSION;
+        } catch (EOFException excp) {
+            return false;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Discards the commit-log file, which save replaces, and the message
+     *  index, which must be rebuilt whenever the commit-log file has been
+     *  lost or is in an older format. */
+    void clear() {
+        _cleared = true;
+        File[] files = _messages.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Records the metadata of COMMIT. */
+    void add(Commit commit) {
+        String pid = commit.mergePid() == null ? null : commit.pid();
+        _pending.add(new Entry(commit.id(), pid, commit.mergePid(),
+                               commit.time(), commit.timeStamp(),
+                               commit.log()));
+    }
+
+    /** Calls ACTION on the metadata of every recorded commit, in the
+     *  order the commits were recorded. */
+    void forEach(Consumer<Entry> action) {
+        if (_file.isFile() && !_cleared) {
+            try (DataInputStream in = new DataInputStream(
+                     new BufferedInputStream(Files.newInputStream(
+                         _file.toPath())))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    Utils.message("Unrecognized commit-log file.");
+                    throw new GitletException();
+                }
+                byte[] id = new byte[Utils.UID_LENGTH / 2];
+                byte[] pid = new byte[id.length];
+                byte[] mergePid = new byte[id.length];
+                while (true) {
+                    boolean merge;
+                    long time;
+                    String timeStamp;
+                    byte[] message;
+                    try {
+                        in.readFully(id);
+                        merge = in.readBoolean();
+                        if (merge) {
+                            in.readFully(pid);
+                            in.readFully(mergePid);
+                        }
+                        time = in.readLong();
+                        timeStamp = in.readUTF();
+                        message = new byte[in.readInt()];
+                        in.readFully(message);
+                    } catch (EOFException excp) {
+                        break;
+                    }
+                    action.accept(new Entry(Utils.toHex(id),
+                        merge ? Utils.toHex(pid) : null,
+                        merge ? Utils.toHex(mergePid) : null, time, timeStamp,
+                        new String(message, StandardCharsets.UTF_8)));
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        _pending.forEach(action);
+    }
+
+    /** Returns the ids of all recorded commits whose log message is
+     *  MESSAGE. */
+    List<String> find(String message) {
+        ArrayList<String> ids = new ArrayList<>();
+        File file = messageFile(message);
+        if (file.isFile()) {
+            for (String id : Utils.readContentsAsString(file).split("\n")) {
+                if (id.length() == Utils.UID_LENGTH) {
+                    ids.add(id);
+                }
+            }
+        }
+        for (Entry entry : _pending) {
+            if (entry._message.equals(message)) {
+                ids.add(entry._id);
+            }
+        }
+        return ids;
+    }
+
+    /** Stages in JOURNAL the appending of the metadata recorded since the
+     *  last save to the log and the message index. */
+    void save(Journal journal) {
+        if (_pending.isEmpty()) {
+            return;
+        }
+        boolean fresh = _cleared || !_file.isFile();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LinkedHashMap<File, ByteArrayOutputStream> messages =
+            new LinkedHashMap<>();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (fresh) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            for (Entry entry : _pending) {
+                byte[] message =
+                    entry._message.getBytes(StandardCharsets.UTF_8);
+                out.write(Utils.fromHex(entry._id));
+                out.writeBoolean(entry._mergePid != null);
+                if (entry._mergePid != null) {
+                    out.write(Utils.fromHex(entry._pid));
+                    out.write(Utils.fromHex(entry._mergePid));
+                }
+                out.writeLong(entry._time);
+                out.writeUTF(entry._timeStamp);
+                out.writeInt(message.length);
+                out.write(message);
+            }
+            for (Entry entry : _pending) {
+                messages.computeIfAbsent(messageFile(entry._message),
+                                         k -> new ByteArrayOutputStream())
+                    .writeBytes((entry._id + "\n").getBytes(
+                                    StandardCharsets.UTF_8));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        journal.write(_file, fresh ? 0 : _file.length(), bytes.toByteArray());
+        messages.forEach((file, ids) -> journal.write(
+            file, file.length(), ids.toByteArray()));
+        _pending.clear();
+        _cleared = false;
+    }
+
+    /** Returns the message-index file for MESSAGE. */
+    private File messageFile(String message) {
+        return Utils.join(_messages, Utils.sha1(message));
+    }
+
+    /** The commit-log file. */
+    private final File _file;
+    /** Directory holding the message index. */
+    private final File _messages;
+    /** Metadata recorded since the last save. */
+    private final ArrayList<Entry> _pending;
+    /** True iff the commit-log file is to be replaced by the metadata
+     *  recorded since, rather than appended to. */
+    private boolean _cleared;
+}
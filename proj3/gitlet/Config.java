@@ -0,0 +1,117 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/** Per-repository settings, kept as KEY=VALUE lines in .gitlet/config.
+ *  @author Kevin Ren
+ */
+class Config {
+
+    /** Version of the on-disk object format written by this gitlet.
+     *  Repositories without one predate compressed objects, and those
+     *  before version 3 keep loose objects in flat directories. */
+    static final int FORMAT = 3;
+    /** First format whose objects start with a header byte. */
+    static final int HEADER_FORMAT = 1;
+    /** Key holding the repository's object format version. */
+    static final String FORMAT_KEY = "core.format";
+    /** Key holding the Deflater level used for new objects. */
+    static final String COMPRESSION_KEY = "core.compression";
+    /** Key holding the number of commands a batch runs between saves
+     *  of the repository, or 0 to save only at the end. */
+    static final String CHECKPOINT_KEY = "batch.checkpoint";
+    /** Default compression level. */
+    static final int DEFAULT_COMPRESSION = 6;
+
+    /** The settings stored in FILE, which need not exist. */
+    Config(File file) {
+        _file = file;
+    }
+
+    /** Returns the value of KEY, or null if it is not set. */
+    String get(String key) {
+        return properties().getProperty(key);
+    }
+
+    /** Returns the value of KEY as an integer, or DEFAULTVALUE if it is
+     *  not set. */
+    int getInt(String key, int defaultValue) {
+        String value = get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException excp) {
+            Utils.message("Bad value for %s: %s", key, value);
+            throw new GitletException();
+        }
+    }
+
+    /** Returns the compression level for new objects, from 0 (store
+     *  uncompressed) to 9 (smallest). */
+    int compression() {
+        return getInt(COMPRESSION_KEY, DEFAULT_COMPRESSION);
+    }
+
+    /** Returns the number of commands a batch runs between saves, or 0
+     *  if it saves only at the end. */
+    int checkpoint() {
+        return getInt(CHECKPOINT_KEY, 0);
+    }
+
+    /** Sets KEY to VALUE. */
+    void set(String key, String value) {
+        properties().setProperty(key, value);
+        _changed = true;
+    }
+
+    /** Returns true iff the settings changed since they were read or
+     *  last saved. */
+    boolean changed() {
+        return _changed;
+    }
+
+    /** Stages in JOURNAL the writing back of the settings, if they were
+     *  changed. */
+    void save(Journal journal) {
+        if (!_changed) {
+            return;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            _properties.store(out, null);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        journal.replace(_file, out.toByteArray());
+        _changed = false;
+    }
+
+    /** Returns the settings, reading them if necessary. */
+    private Properties properties() {
+        if (_properties == null) {
+            _properties = new Properties();
+            if (_file.isFile()) {
+                try (InputStream in = Files.newInputStream(_file.toPath())) {
+                    _properties.load(in);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        return _properties;
+    }
+
+    /** File holding the settings. */
+    private final File _file;
+    /** The settings, or null if not yet read. */
+    private Properties _properties;
+    /** True iff the settings changed since they were read. */
+    private boolean _changed;
+}
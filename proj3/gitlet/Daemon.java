@@ -0,0 +1,267 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** A long-running gitlet process that serves the commands of gitlet
+ *  clients in the same directory, so that they pay neither the JVM's
+ *  start-up and warm-up nor the reading of repository state.
+ *
+ *  The daemon listens on the Unix domain socket SOCKET in the .gitlet
+ *  directory.  A client writes each argument of its command in UTF-8,
+ *  followed by a NUL byte, and then shuts down its side of the
+ *  connection; the daemon runs the command and writes back everything
+ *  it printed, as is, before closing the connection.
+ *
+ *  The protocol is plain so that the client need not be a JVM, which
+ *  would pay its start-up on every command: client/gitlet.c is a small
+ *  C client that speaks it, and that runs java gitlet.Main itself when
+ *  no daemon is listening.  Main also sends its command to the daemon
+ *  while the socket exists, which spares it the reading of repository
+ *  state, but not the start-up of its own JVM.
+ *
+ *  Commands are run one at a time on a single Repo, whose commits,
+ *  trees and packs stay in memory from one command to the next, holding
+ *  the WriteLock while they run if they change the repository.  The
+ *  Repo is replaced by a fresh one whenever a command fails, since it
+ *  may then hold changes that were never saved; whenever a command
+ *  changes the settings, which a Repo reads only when it is made; and
+ *  whenever the repository's state files have changed since the Repo
+ *  last saw them, since another process has then written to the
+ *  repository.
+ *  @author Kevin Ren
+ */
+class Daemon {
+
+    /** The socket the daemon listens on. */
+    static final File SOCKET = Utils.join(Repo.GITLET, "daemon.sock");
+    /** The operand of the daemon command that stops a running daemon. */
+    static final String STOP = "stop";
+    /** Directories whose entries hold the state read by a Repo. */
+    private static final File[] STATE_DIRS = {
+        Repo.GITLET,
+        Utils.join(Repo.GITLET, "refs", "heads"),
+        Utils.join(Repo.GITLET, "objects", "pack"),
+        Utils.join(Repo.GITLET, "commits", "pack"),
+        Utils.join(Repo.GITLET, "trees", "pack"),
+    };
+
+    /** Runs the daemon command with OPERANDS: with none, serves commands
+     *  until stopped; with STOP, stops the running daemon. */
+    static void start(String... operands) {
+        if (!Main.initialized()) {
+            Utils.message("Not in an initialized Gitlet directory.");
+            throw new GitletException();
+        } else if (operands.length == 1 && operands[0].equals(STOP)) {
+            if (!forward("daemon", STOP)) {
+                Utils.message("No gitlet daemon is running.");
+                throw new GitletException();
+            }
+        } else if (operands.length != 0) {
+            Utils.message("Incorrect operands.");
+            throw new GitletException();
+        } else if (running()) {
+            Utils.message("A gitlet daemon is already running.");
+            throw new GitletException();
+        } else {
+            SOCKET.delete();
+            Repo repo = new Repo();
+            repo.checkFormat();
+            new Daemon(repo).serve();
+        }
+    }
+
+    /** Sends the command ARGS to a running daemon and prints its output,
+     *  returning false without doing anything if there is no daemon to
+     *  send it to. */
+    static boolean forward(String... args) {
+        SocketChannel channel = connect();
+        if (channel == null) {
+            return false;
+        }
+        try (channel) {
+            OutputStream out =
+                new BufferedOutputStream(Channels.newOutputStream(channel));
+            for (String arg : args) {
+                out.write(arg.getBytes(StandardCharsets.UTF_8));
+                out.write(0);
+            }
+            out.flush();
+            channel.shutdownOutput();
+            Channels.newInputStream(channel).transferTo(System.out);
+            System.out.flush();
+            return true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true iff a daemon is listening on SOCKET. */
+    private static boolean running() {
+        try (SocketChannel channel = connect()) {
+            return channel != null;
+        } catch (IOException excp) {
+            return true;
+        }
+    }
+
+    /** Returns a connection to the daemon listening on SOCKET, or null
+     *  if there is none.  A socket left behind by a daemon that died
+     *  refuses connections. */
+    private static SocketChannel connect() {
+        if (!SOCKET.exists()) {
+            return null;
+        }
+        try {
+            SocketChannel channel =
+                SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(UnixDomainSocketAddress.of(SOCKET.toPath()));
+                return channel;
+            } catch (IOException excp) {
+                channel.close();
+                return null;
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** A daemon serving commands on REPO. */
+    private Daemon(Repo repo) {
+        _repo = repo;
+    }
+
+    /** Listens on SOCKET and runs the commands sent there until one
+     *  stops the daemon, then removes the socket. */
+    private void serve() {
+        Runtime.getRuntime().addShutdownHook(new Thread(SOCKET::delete));
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            _stamp = stamp();
+            boolean running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    running = handle(client);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            SOCKET.delete();
+        }
+    }
+
+    /** Reads one command from CLIENT, runs it and writes its output
+     *  back.  Returns false iff the command stops the daemon. */
+    private boolean handle(SocketChannel client) throws IOException {
+        String[] args = readArgs(Channels.newInputStream(client));
+        if (args.length == 2 && args[0].equals("daemon")
+            && args[1].equals(STOP)) {
+            return false;
+        }
+        PrintStream stdout = System.out;
+        PrintStream out = new PrintStream(
+            new BufferedOutputStream(Channels.newOutputStream(client)));
+        System.setOut(out);
+        boolean writes = Main.writes(args);
+        WriteLock lock = null;
+        try {
+            if (writes) {
+                lock = WriteLock.acquire();
+            }
+            String stamp = stamp();
+            if (!stamp.equals(_stamp)) {
+                _repo = new Repo();
+            }
+            _stamp = stamp;
+            byte[] settings = settings();
+            Main.run(args, _repo, writes);
+            if (writes) {
+                _stamp = stamp();
+            }
+            if (!Arrays.equals(settings, settings())) {
+                _repo = new Repo();
+            }
+        } catch (GitletException excp) {
+            _repo = new Repo();
+        } catch (RuntimeException excp) {
+            Utils.message("Internal error: %s", excp.getMessage());
+            _repo = new Repo();
+        } finally {
+            if (lock != null) {
+                lock.close();
+            }
+            out.flush();
+            System.setOut(stdout);
+        }
+        return true;
+    }
+
+    /** Returns the arguments of a command read from IN, each ended by a
+     *  NUL byte, up to the end of the stream. */
+    private static String[] readArgs(InputStream in) throws IOException {
+        byte[] bytes = in.readAllBytes();
+        ArrayList<String> args = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < bytes.length; i += 1) {
+            if (bytes[i] == 0) {
+                args.add(new String(bytes, start, i - start,
+                                    StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+
+    /** Returns the contents of the repository's settings file, or none
+     *  if it does not exist. */
+    private static byte[] settings() {
+        return Repo.CONFIG.isFile()
+            ? Utils.readContents(Repo.CONFIG) : new byte[0];
+    }
+
+    /** Returns a description of the names, sizes and modification times
+     *  of the entries of STATE_DIRS, which changes whenever any of the
+     *  state a Repo reads is rewritten. */
+    private static String stamp() throws IOException {
+        StringBuilder result = new StringBuilder();
+        for (File dir : STATE_DIRS) {
+            File[] files = dir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            Arrays.sort(files);
+            for (File file : files) {
+                BasicFileAttributes attrs = Files.readAttributes(
+                    file.toPath(), BasicFileAttributes.class);
+                result.append(file.getPath()).append(' ')
+                    .append(attrs.size()).append(' ')
+                    .append(attrs.lastModifiedTime()).append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /** The repository the commands are run on. */
+    private Repo _repo;
+    /** The stamp of the repository's state as last seen by _REPO. */
+    private String _stamp;
+}
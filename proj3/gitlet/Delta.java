@@ -0,0 +1,212 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+
+/** Binary deltas between two versions of a file's contents.
+ *
+ *  A delta is the lengths of the base and the result, followed by a
+ *  sequence of instructions: COPY, with an offset and length, copies a
+ *  run of bytes from the base; INSERT, with a length and that many
+ *  bytes, inserts new bytes.  All numbers are written as unsigned
+ *  variable-length integers, seven bits to a byte.
+ *
+ *  Deltas are found by indexing the base in BLOCK-byte blocks and
+ *  looking up each position of the result by a rolling hash, extending
+ *  the longest match as far as it goes in both directions, so a small
+ *  edit to a large file yields a delta about the size of the edit.
+ *  The index is a table of chains kept in int arrays, so blocks whose
+ *  hashes collide are all kept, at twelve bytes at most a block.
+ *  @author Kevin Ren
+ */
+class Delta {
+
+    /** Instruction copying from the base. */
+    private static final int COPY = 0;
+    /** Instruction inserting literal bytes. */
+    private static final int INSERT = 1;
+    /** Size of the blocks of the base that are indexed. */
+    private static final int BLOCK = 16;
+    /** Multiplier of the rolling hash of a block. */
+    private static final int PRIME = 31;
+    /** Weight of the first byte of a block in its hash, PRIME to the
+     *  power BLOCK - 1. */
+    private static final int LEADING = power(PRIME, BLOCK - 1);
+    /** Largest number of blocks with the same hash slot that are tried
+     *  at each position of the result, bounding the time spent on
+     *  highly repetitive bases. */
+    private static final int MAX_TRIES = 64;
+
+    /** Returns a delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeNumber(out, base.length);
+        writeNumber(out, target.length);
+        int count = base.length / BLOCK;
+        int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(count));
+        int[] heads = new int[1 << bits];
+        int[] next = new int[count];
+        for (int b = count - 1; b >= 0; b -= 1) {
+            int slot = slot(hash(base, b * BLOCK), bits);
+            next[b] = heads[slot];
+            heads[slot] = b + 1;
+        }
+        int pending = 0;
+        int pos = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (pos + BLOCK <= target.length) {
+            int start = -1;
+            int end = pos;
+            int tries = 0;
+            for (int b = heads[slot(h, bits)]; b != 0 && tries < MAX_TRIES;
+                 b = next[b - 1], tries += 1) {
+                int candidate = (b - 1) * BLOCK;
+                if (matches(base, candidate, target, pos)) {
+                    int length = extent(base, candidate + BLOCK,
+                                        target, pos + BLOCK);
+                    if (pos + BLOCK + length > end) {
+                        start = candidate;
+                        end = pos + BLOCK + length;
+                    }
+                }
+            }
+            if (start < 0) {
+                if (pos + BLOCK < target.length) {
+                    h = roll(h, target[pos], target[pos + BLOCK]);
+                }
+                pos += 1;
+                continue;
+            }
+            int from = start;
+            int to = pos;
+            while (from > 0 && to > pending
+                   && base[from - 1] == target[to - 1]) {
+                from -= 1;
+                to -= 1;
+            }
+            insert(out, target, pending, to);
+            out.write(COPY);
+            writeNumber(out, from);
+            writeNumber(out, end - to);
+            pending = pos = end;
+            if (pos + BLOCK <= target.length) {
+                h = hash(target, pos);
+            }
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA, as made by create, to
+     *  BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = { 0 };
+        if (readNumber(delta, pos) != base.length) {
+            throw new IllegalArgumentException("delta does not fit base");
+        }
+        byte[] result = new byte[readNumber(delta, pos)];
+        int size = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]++];
+            if (op == COPY) {
+                int from = readNumber(delta, pos);
+                int len = readNumber(delta, pos);
+                System.arraycopy(base, from, result, size, len);
+                size += len;
+            } else {
+                int len = readNumber(delta, pos);
+                System.arraycopy(delta, pos[0], result, size, len);
+                pos[0] += len;
+                size += len;
+            }
+        }
+        if (size != result.length) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        return result;
+    }
+
+    /** Writes an INSERT instruction to OUT for bytes START to END of
+     *  TARGET, unless that range is empty. */
+    private static void insert(ByteArrayOutputStream out, byte[] target,
+                               int start, int end) {
+        if (start < end) {
+            out.write(INSERT);
+            writeNumber(out, end - start);
+            out.write(target, start, end - start);
+        }
+    }
+
+    /** Returns true iff the BLOCK bytes of A at AT equal those of B at
+     *  BT. */
+    private static boolean matches(byte[] a, int at, byte[] b, int bt) {
+        for (int i = 0; i < BLOCK; i += 1) {
+            if (a[at + i] != b[bt + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the number of bytes of A from AT that equal those of B
+     *  from BT. */
+    private static int extent(byte[] a, int at, byte[] b, int bt) {
+        int n = 0;
+        while (at + n < a.length && bt + n < b.length
+               && a[at + n] == b[bt + n]) {
+            n += 1;
+        }
+        return n;
+    }
+
+    /** Returns a hash of the BLOCK bytes of DATA starting at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = PRIME * h + data[i];
+        }
+        return h;
+    }
+
+    /** Returns the slot of a table of 2 to the power BITS chains, from 1
+     *  to 30, holding the blocks with hash H. */
+    private static int slot(int h, int bits) {
+        return (h * 0x9e3779b1) >>> (32 - bits);
+    }
+
+    /** Returns the hash of the BLOCK bytes after those hashing to H,
+     *  which began with byte OUT and are followed by byte IN. */
+    private static int roll(int h, byte out, byte in) {
+        return PRIME * (h - out * LEADING) + in;
+    }
+
+    /** Returns X to the power N, in int arithmetic. */
+    private static int power(int x, int n) {
+        int result = 1;
+        for (int i = 0; i < n; i += 1) {
+            result *= x;
+        }
+        return result;
+    }
+
+    /** Writes the non-negative number N to OUT, seven bits at a time. */
+    private static void writeNumber(ByteArrayOutputStream out, int n) {
+        while (n >= 0x80) {
+            out.write((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.write(n);
+    }
+
+    /** Returns the number starting at index POS[0] of DATA, advancing
+     *  POS[0] past it. */
+    private static int readNumber(byte[] data, int[] pos) {
+        int n = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = data[pos[0]++] & 0xff;
+            n |= (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return n;
+            }
+        }
+    }
+}
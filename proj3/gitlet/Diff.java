@@ -0,0 +1,153 @@
+package gitlet;
+
+import java.util.Arrays;
+
+/** Longest common subsequences of two sequences, by Myers' O(ND)
+ *  difference algorithm.
+ *
+ *  The sequences are arrays of ints, such as lines numbered so that
+ *  equal lines get equal numbers.  The common prefix and suffix are
+ *  matched directly; what remains is split at a point on an optimal
+ *  path found by running the algorithm from both ends until the two
+ *  searches meet, and each half is compared in turn.  This takes
+ *  linear space however far apart the sequences are.
+ *  @author Kevin Ren
+ */
+class Diff {
+
+    /** Fewest differences searched for between two sequences before
+     *  giving up on matching any of their elements. */
+    private static final int MIN_COST = 256;
+    /** Number of steps along diagonals after which a search gives up,
+     *  if it has looked for at least MIN_COST differences.  This keeps
+     *  long, very different sequences from taking quadratic time. */
+    private static final int MAX_WORK = 1 << 26;
+
+    /** Returns an array giving, for each element of A, the index of the
+     *  element of B it is matched with in a longest common subsequence
+     *  of A and B, or -1 if it is not matched.  The matched indices
+     *  increase along A.  Stretches of the two that differ too much to
+     *  be worth comparing are left unmatched, so the subsequence found
+     *  is then common but not always longest. */
+    static int[] matches(int[] a, int[] b) {
+        int[] match = new int[a.length];
+        Arrays.fill(match, -1);
+        compare(a, 0, a.length, b, 0, b.length, match);
+        return match;
+    }
+
+    /** Records in MATCH a longest common subsequence of A[ALO .. AHI-1]
+     *  and B[BLO .. BHI-1]. */
+    private static void compare(int[] a, int aLo, int aHi,
+                                int[] b, int bLo, int bHi, int[] match) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            match[aLo] = bLo;
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+            match[aHi] = bHi;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            return;
+        }
+        int[] split = split(a, aLo, aHi, b, bLo, bHi);
+        if (split == null) {
+            return;
+        }
+        compare(a, aLo, aLo + split[0], b, bLo, bLo + split[1], match);
+        compare(a, aLo + split[0], aHi, b, bLo + split[1], bHi, match);
+    }
+
+    /** Returns the point {X, Y}, relative to ALO and BLO, at which the
+     *  forward and backward searches for the shortest edit script of
+     *  A[ALO .. AHI-1] and B[BLO .. BHI-1] meet, or null if the point
+     *  would not split the problem or the sequences are too different
+     *  to be worth comparing.  The sequences must differ at both
+     *  ends. */
+    private static int[] split(int[] a, int aLo, int aHi,
+                               int[] b, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int max = (n + m + 1) / 2;
+        int offset = max;
+        int[] forward = new int[2 * max + 2];
+        int[] backward = new int[2 * max + 2];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int[] bounds = new int[4];
+        int limit = Math.max(MIN_COST, MAX_WORK / (n + m));
+        for (int d = 0; d < max; d += 1) {
+            int[] point = step(a, aLo, b, bLo, n, m, d, forward, backward,
+                               offset, odd, bounds, false);
+            if (point == null) {
+                point = step(a, aLo, b, bLo, n, m, d, backward, forward,
+                             offset, !odd, bounds, true);
+            }
+            if (point == null && d >= limit) {
+                return null;
+            }
+            if (point != null) {
+                boolean trivial = point[0] == 0 && point[1] == 0
+                    || point[0] == n && point[1] == m;
+                return trivial ? null : point;
+            }
+        }
+        return null;
+    }
+
+    /** Extends the furthest-reaching D-paths of one search, the
+     *  backward one iff REVERSE, over A[ALO .. ALO+N-1] and
+     *  B[BLO .. BLO+M-1].  MINE holds the endpoints of that search by
+     *  diagonal, plus OFFSET, and OTHER those of the other search.  If
+     *  CHECK, the paths are checked for overlap with the other search.
+     *  BOUNDS holds the number of diagonals trimmed at each end of each
+     *  search because they ran off the edit graph.  Returns the end of
+     *  the forward path where the searches meet, or null if they have
+     *  not met. */
+    private static int[] step(int[] a, int aLo, int[] b, int bLo,
+                              int n, int m, int d, int[] mine,
+                              int[] other, int offset, boolean check,
+                              int[] bounds, boolean reverse) {
+        int start = reverse ? 2 : 0;
+        int delta = n - m;
+        for (int k = -d + bounds[start]; k <= d - bounds[start + 1];
+             k += 2) {
+            int x;
+            if (k == -d || k != d && mine[offset + k - 1]
+                < mine[offset + k + 1]) {
+                x = mine[offset + k + 1];
+            } else {
+                x = mine[offset + k - 1] + 1;
+            }
+            int y = x - k;
+            while (x < n && y < m && (reverse
+                   ? a[aLo + n - 1 - x] == b[bLo + m - 1 - y]
+                   : a[aLo + x] == b[bLo + y])) {
+                x += 1;
+                y += 1;
+            }
+            mine[offset + k] = x;
+            if (x > n) {
+                bounds[start + 1] += 2;
+            } else if (y > m) {
+                bounds[start] += 2;
+            } else if (check) {
+                int j = offset + delta - k;
+                if (j >= 0 && j < other.length && other[j] != -1
+                    && x + other[j] >= n) {
+                    return reverse ? new int[] { other[j],
+                                                 other[j] - delta + k }
+                        : new int[] { x, y };
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,130 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/** A three-way merge of the lines of two texts descended from a common
+ *  base.
+ *
+ *  Each side is compared with the base by Diff.  Base lines matched on
+ *  both sides at the current position of each are stable and copied as
+ *  they are.  The stretch of each text up to the next line matched on
+ *  both sides is a hunk: if only one side changed it, that side's lines
+ *  are taken; if both changed it the same way, either is taken; and
+ *  otherwise the two versions are written between conflict markers.
+ *  So changes to different parts of a file merge cleanly.
+ *  @author Kevin Ren
+ */
+class Diff3 {
+
+    /** The merge of OURS and THEIRS, both derived from BASE. */
+    Diff3(String base, String ours, String theirs) {
+        HashMap<String, Integer> numbers = new HashMap<>();
+        _base = lines(base);
+        _ours = lines(ours);
+        _theirs = lines(theirs);
+        int[] b = number(_base, numbers);
+        int[] o = number(_ours, numbers);
+        int[] t = number(_theirs, numbers);
+        _result = new StringBuilder();
+        merge(Diff.matches(b, o), Diff.matches(b, t));
+    }
+
+    /** Returns the merged text. */
+    String result() {
+        return _result.toString();
+    }
+
+    /** Returns true iff some hunk was changed differently on the two
+     *  sides. */
+    boolean conflicted() {
+        return _conflicted;
+    }
+
+    /** Returns a conflict of OURS against THEIRS as written in a merged
+     *  file. */
+    static String conflict(String ours, String theirs) {
+        return "<<<<<<< HEAD\n" + ours + "=======\n" + theirs + ">>>>>>>\n";
+    }
+
+    /** Merges the texts into _RESULT, where TOOURS and TOTHEIRS give the
+     *  lines of each side matched with each base line, as from
+     *  Diff.matches. */
+    private void merge(int[] toOurs, int[] toTheirs) {
+        int b = 0, o = 0, t = 0;
+        while (b < _base.size() || o < _ours.size() || t < _theirs.size()) {
+            while (b < _base.size() && toOurs[b] == o && toTheirs[b] == t) {
+                _result.append(_base.get(b));
+                b += 1;
+                o += 1;
+                t += 1;
+            }
+            int next = b;
+            while (next < _base.size()
+                   && (toOurs[next] < 0 || toTheirs[next] < 0)) {
+                next += 1;
+            }
+            int oEnd = next < _base.size() ? toOurs[next] : _ours.size();
+            int tEnd = next < _base.size() ? toTheirs[next] : _theirs.size();
+            hunk(_base.subList(b, next), _ours.subList(o, oEnd),
+                 _theirs.subList(t, tEnd));
+            b = next;
+            o = oEnd;
+            t = tEnd;
+        }
+    }
+
+    /** Adds to _RESULT the merge of hunk BASE as changed to OURS and
+     *  THEIRS. */
+    private void hunk(List<String> base, List<String> ours,
+                      List<String> theirs) {
+        if (ours.equals(base) || ours.equals(theirs)) {
+            theirs.forEach(_result::append);
+        } else if (theirs.equals(base)) {
+            ours.forEach(_result::append);
+        } else {
+            _conflicted = true;
+            _result.append(conflict(String.join("", ours),
+                                    String.join("", theirs)));
+        }
+    }
+
+    /** Returns the lines of TEXT, each with its line terminator. */
+    private static List<String> lines(String text) {
+        ArrayList<String> lines = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start) + 1;
+            if (end == 0) {
+                end = text.length();
+            }
+            lines.add(text.substring(start, end));
+            start = end;
+        }
+        return lines;
+    }
+
+    /** Returns the numbers of LINES, giving each line not yet in
+     *  NUMBERS the next number. */
+    private static int[] number(List<String> lines,
+                                HashMap<String, Integer> numbers) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = numbers.computeIfAbsent(lines.get(i),
+                                                k -> numbers.size());
+        }
+        return result;
+    }
+
+    /** Lines of the common ancestor. */
+    private final List<String> _base;
+    /** Lines of the current branch's version. */
+    private final List<String> _ours;
+    /** Lines of the given branch's version. */
+    private final List<String> _theirs;
+    /** The merged text. */
+    private final StringBuilder _result;
+    /** True iff the sides conflict. */
+    private boolean _conflicted;
+}
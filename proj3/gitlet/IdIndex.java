@@ -0,0 +1,214 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.TreeSet;
+
+/** A sorted index of the ids of all commits, so that an abbreviated
+ *  commit id can be resolved without listing the commit store.
+ *
+ *  The file is a header, a fan-out table and the ids, as raw 20-byte
+ *  SHA-1s, in sorted order.  Entry B of the fan-out table is the number
+ *  of sorted ids whose first byte is at most B, so the ids starting with
+ *  a given byte are found directly and searched by bisection.  Ids of
+ *  new commits are appended unsorted after the sorted ones and scanned
+ *  in full; once there are more than MAX_UNSORTED of them the whole
+ *  file is rewritten sorted.  The file is read through a memory mapping.
+ *  @author Kevin Ren
+ */
+class IdIndex {
+
+    /** Magic number at the start of an id-index file. */
+    private static final int MAGIC = 0x474c4944;
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+    /** Number of entries in the fan-out table. */
+    private static final int FANOUT = 256;
+    /** Size of the file header and fan-out table in bytes. */
+    private static final int HEADER = 12 + 4 * FANOUT;
+    /** Size of a commit id in bytes. */
+    private static final int ID_SIZE = Utils.UID_LENGTH / 2;
+    /** Most unsorted ids kept at the end of the file. */
+    private static final int MAX_UNSORTED = 256;
+
+    /** The id index stored in FILE, which need not exist yet. */
+    IdIndex(File file) {
+        _file = file;
+        _added = new ArrayList<>();
+        map();
+    }
+
+    /** Returns true iff the file exists and is an id index of the
+     *  current version. */
+    boolean exists() {
+        return _buffer != null;
+    }
+
+    /** Records the commit id ID. */
+    void add(String id) {
+        _added.add(id);
+    }
+
+    /** Replaces the contents of the index with IDS. */
+    void rebuild(Collection<String> ids) {
+        _buffer = null;
+        _sorted = 0;
+        _unsorted = 0;
+        _added.clear();
+        _added.addAll(ids);
+    }
+
+    /** Returns the one recorded id starting with PREFIX, a string of
+     *  lower-case hexadecimal digits, or null if there is none or more
+     *  than one. */
+    String resolve(String prefix) {
+        if (prefix.isEmpty() || prefix.length() > Utils.UID_LENGTH
+            || !prefix.chars().allMatch(c -> Character.digit(c, 16) >= 0
+                                        && !Character.isUpperCase(c))) {
+            return null;
+        }
+        String found = null;
+        int lo, hi;
+        if (prefix.length() == 1) {
+            int first = Character.digit(prefix.charAt(0), 16) << 4;
+            lo = fanout(first - 1);
+            hi = fanout(first | 0xf);
+        } else {
+            int first = Integer.parseInt(prefix.substring(0, 2), 16);
+            lo = fanout(first - 1);
+            hi = fanout(first);
+        }
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (id(mid).compareTo(prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int pos = lo; pos < _sorted; pos += 1) {
+            String id = id(pos);
+            if (!id.startsWith(prefix)) {
+                break;
+            } else if (found != null) {
+                return null;
+            }
+            found = id;
+        }
+        for (int pos = _sorted; pos < _sorted + _unsorted + _added.size();
+             pos += 1) {
+            String id = id(pos);
+            if (id.startsWith(prefix) && !id.equals(found)) {
+                if (found != null) {
+                    return null;
+                }
+                found = id;
+            }
+        }
+        return found;
+    }
+
+    /** Stages in JOURNAL the writing of the ids added since the file was
+     *  read to the file, appending them unless that would leave too many
+     *  unsorted. */
+    void save(Journal journal) {
+        if (_added.isEmpty()) {
+            return;
+        }
+        if (_buffer == null || _unsorted + _added.size() > MAX_UNSORTED) {
+            journal.replace(_file, sorted());
+        } else {
+            ByteBuffer out = ByteBuffer.allocate(ID_SIZE * _added.size());
+            _added.forEach(id -> out.put(Utils.fromHex(id)));
+            journal.write(_file, offset(_sorted + _unsorted), out.array());
+        }
+        journal.afterCommit(this::map);
+    }
+
+    /** Returns the contents of a file holding all ids, sorted. */
+    private byte[] sorted() {
+        TreeSet<String> ids = new TreeSet<>(_added);
+        for (int pos = 0; pos < _sorted + _unsorted; pos += 1) {
+            ids.add(id(pos));
+        }
+        ByteBuffer out = ByteBuffer.allocate(HEADER + ID_SIZE * ids.size());
+        out.putInt(MAGIC).putInt(VERSION).putInt(ids.size());
+        int[] counts = new int[FANOUT];
+        for (String id : ids) {
+            counts[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+            out.putInt(total);
+        }
+        ids.forEach(id -> out.put(Utils.fromHex(id)));
+        return out.array();
+    }
+
+    /** Maps the file into memory, discarding it if it is not an
+     *  id-index file of the current version, and forgets any ids not
+     *  yet written. */
+    private void map() {
+        _buffer = null;
+        _sorted = 0;
+        _unsorted = 0;
+        _added.clear();
+        if (!_file.isFile() || _file.length() < HEADER) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(_file.toPath())) {
+            MappedByteBuffer buffer =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION) {
+                _buffer = buffer;
+                _sorted = buffer.getInt(8);
+                _unsorted = (int) ((channel.size() - offset(_sorted))
+                                   / ID_SIZE);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the number of sorted ids whose first byte is at most B,
+     *  which is 0 for B = -1. */
+    private int fanout(int b) {
+        if (b < 0 || _buffer == null) {
+            return 0;
+        }
+        return _buffer.getInt(12 + 4 * b);
+    }
+
+    /** Returns the id at position POS: first the sorted ids in the file,
+     *  then the unsorted ones, then those not yet written. */
+    private String id(int pos) {
+        if (pos >= _sorted + _unsorted) {
+            return _added.get(pos - _sorted - _unsorted);
+        }
+        byte[] id = new byte[ID_SIZE];
+        _buffer.get(offset(pos), id);
+        return Utils.toHex(id);
+    }
+
+    /** Returns the offset in the file of the id at position POS. */
+    private static int offset(int pos) {
+        return HEADER + ID_SIZE * pos;
+    }
+
+    /** File holding the index. */
+    private final File _file;
+    /** The mapped file, or null if there is no usable file. */
+    private MappedByteBuffer _buffer;
+    /** Number of sorted ids in the mapped file. */
+    private int _sorted;
+    /** Number of unsorted ids after them in the mapped file. */
+    private int _unsorted;
+    /** Ids recorded since the file was read. */
+    private final ArrayList<String> _added;
+}
@@ -0,0 +1,274 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/** The index: the snapshot the next commit will record.  Like git's
+ *  index it holds an entry for every tracked file, with the file's blob
+ *  id and the size and modification time it had when that id was
+ *  computed.  Files staged for addition are those whose entries differ
+ *  from the head commit, and files staged for removal are those in the
+ *  head commit with no entry.  The stat data lets add and status skip
+ *  rehashing files that have not changed.
+ *
+ *  Like git's cache-tree extension, the index also remembers the tree
+ *  id of each directory whose contents have not changed since its tree
+ *  was last written.  Changing a file forgets the trees of the
+ *  directories above it, so writing the trees of the index for a
+ *  commit visits only the directories on the paths of changed files.
+ *  @author Kevin Ren
+ */
+class Index {
+
+    /** Magic number at the start of an index file. */
+    private static final int MAGIC = 0x474c4958;
+    /** Version of the index file format. */
+    private static final int VERSION = 2;
+    /** Version of the index file format without cached trees. */
+    private static final int OLD_VERSION = 1;
+
+    /** One tracked file. */
+    static class Entry {
+        /** An entry for blob ID whose file had SIZE bytes and was last
+         *  modified at MTIME. */
+        Entry(String id, long size, long mtime) {
+            _id = id;
+            _size = size;
+            _mtime = mtime;
+        }
+
+        /** Returns the blob id. */
+        String id() {
+            return _id;
+        }
+
+        /** Blob id of the file's contents. */
+        private final String _id;
+        /** File size in bytes when the id was computed. */
+        private final long _size;
+        /** File modification time, in nanoseconds, when the id was
+         *  computed. */
+        private final long _mtime;
+    }
+
+    /** Returns the index stored in FILE, or an empty one if FILE does
+     *  not exist. */
+    static Index read(File file) {
+        Index index = new Index();
+        if (!file.isFile()) {
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(
+                     file.toPath())))) {
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version != VERSION && version != OLD_VERSION) {
+                Utils.message("Unrecognized index file.");
+                throw new GitletException();
+            }
+            index._written = mtime(file);
+            byte[] id = new byte[Utils.UID_LENGTH / 2];
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String name = in.readUTF();
+                long size = in.readLong();
+                long mtime = in.readLong();
+                in.readFully(id);
+                index._entries.put(name,
+                                   new Entry(Utils.toHex(id), size, mtime));
+            }
+            for (int n = version == VERSION ? in.readInt() : 0; n > 0;
+                 n -= 1) {
+                String dir = in.readUTF();
+                in.readFully(id);
+                index._trees.put(dir, Utils.toHex(id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return index;
+    }
+
+    /** Stages in JOURNAL the writing of this index to FILE if it changed
+     *  since it was read or last saved.  Once the file is written, its
+     *  modification time becomes the one entries are judged against, so
+     *  a long-lived Index trusts the stat data it has just saved. */
+    void save(File file, Journal journal) {
+        if (!_changed) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue()._size);
+                out.writeLong(e.getValue()._mtime);
+                out.write(Utils.fromHex(e.getValue()._id));
+            }
+            out.writeInt(_trees.size());
+            for (Map.Entry<String, String> e : _trees.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.write(Utils.fromHex(e.getValue()));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        journal.replace(file, bytes.toByteArray());
+        journal.afterCommit(() -> _written = mtime(file));
+        _changed = false;
+    }
+
+    /** Returns the entry for NAME, or null if NAME is not tracked. */
+    Entry get(String name) {
+        return _entries.get(name);
+    }
+
+    /** Returns true iff NAME is tracked. */
+    boolean contains(String name) {
+        return _entries.containsKey(name);
+    }
+
+    /** Returns the blob id recorded for FILE, stored under NAME, if the
+     *  file's size and modification time show it is unchanged since
+     *  that id was computed, and null otherwise.  Files modified no
+     *  earlier than the index was last written are never trusted, since
+     *  a later change within the same clock tick would be invisible. */
+    String cachedId(String name, File file) {
+        Entry entry = _entries.get(name);
+        if (entry == null || entry._mtime >= _written) {
+            return null;
+        }
+        BasicFileAttributes attrs = attributes(file);
+        if (attrs == null || attrs.size() != entry._size
+            || attrs.lastModifiedTime().to(NANOS) != entry._mtime) {
+            return null;
+        }
+        return entry._id;
+    }
+
+    /** Returns the names of all tracked files, in lexicographic
+     *  order. */
+    Set<String> names() {
+        return _entries.keySet();
+    }
+
+    /** Records NAME as tracked with blob id ID, taking the stat data
+     *  from FILE, which must currently hold that content. */
+    void put(String name, String id, File file) {
+        BasicFileAttributes attrs = attributes(file);
+        long size = attrs == null ? -1 : attrs.size();
+        long mtime = attrs == null ? -1 : attrs.lastModifiedTime().to(NANOS);
+        _entries.put(name, new Entry(id, size, mtime));
+        invalidate(name);
+        _changed = true;
+    }
+
+    /** Records NAME as tracked with blob id ID, without stat data, so
+     *  that the file will be rehashed the next time it is examined. */
+    void put(String name, String id) {
+        _entries.put(name, new Entry(id, -1, -1));
+        invalidate(name);
+        _changed = true;
+    }
+
+    /** Stops tracking NAME. */
+    void remove(String name) {
+        if (_entries.remove(name) != null) {
+            invalidate(name);
+            _changed = true;
+        }
+    }
+
+    /** Stores the trees of the snapshot this index describes in TREES,
+     *  and returns the id of the top tree. */
+    String writeTree(TreeStore trees) {
+        int cached = _trees.size();
+        String id = trees.write(_entries, Entry::id, _trees);
+        _changed |= _trees.size() != cached;
+        return id;
+    }
+
+    /** Records that this index describes exactly the snapshot whose top
+     *  tree, in TREES, is ROOT. */
+    void setTree(TreeStore trees, String root) {
+        _trees.clear();
+        trees.directories(root, _trees);
+        _changed = true;
+    }
+
+    /** Forgets the trees of the directories above NAME. */
+    private void invalidate(String name) {
+        _trees.remove("");
+        for (int i = name.indexOf('/'); i >= 0; i = name.indexOf('/', i + 1)) {
+            _trees.remove(name.substring(0, i + 1));
+        }
+    }
+
+    /** Returns the files staged for addition relative to the snapshot
+     *  HEAD, mapped to their blob ids, in lexicographic order. */
+    TreeMap<String, String> staged(Map<String, String> head) {
+        TreeMap<String, String> staged = new TreeMap<>();
+        for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+            if (!e.getValue()._id.equals(head.get(e.getKey()))) {
+                staged.put(e.getKey(), e.getValue()._id);
+            }
+        }
+        return staged;
+    }
+
+    /** Returns the files staged for removal relative to the snapshot
+     *  HEAD, in lexicographic order. */
+    TreeSet<String> removed(Map<String, String> head) {
+        TreeSet<String> removed = new TreeSet<>();
+        for (String name : head.keySet()) {
+            if (!_entries.containsKey(name)) {
+                removed.add(name);
+            }
+        }
+        return removed;
+    }
+
+    /** Returns the attributes of FILE, or null if it does not exist. */
+    private static BasicFileAttributes attributes(File file) {
+        try {
+            return Files.readAttributes(file.toPath(),
+                                        BasicFileAttributes.class);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Returns the modification time of FILE in nanoseconds. */
+    private static long mtime(File file) {
+        BasicFileAttributes attrs = attributes(file);
+        return attrs == null ? 0 : attrs.lastModifiedTime().to(NANOS);
+    }
+
+    /** Unit of recorded modification times. */
+    private static final TimeUnit NANOS = TimeUnit.NANOSECONDS;
+
+    /** Tracked files in lexicographic order. */
+    private final TreeMap<String, Entry> _entries = new TreeMap<>();
+    /** Tree ids of the directories unchanged since their trees were
+     *  written, by directory. */
+    private final HashMap<String, String> _trees = new HashMap<>();
+    /** Modification time of the index file when it was last read or
+     *  written, in nanoseconds. */
+    private long _written;
+    /** True iff this index changed since it was read. */
+    private boolean _changed;
+}
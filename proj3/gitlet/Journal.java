@@ -0,0 +1,283 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/** A write-ahead journal making the changes one command makes to the
+ *  repository's state files all-or-nothing.
+ *
+ *  The changes are staged in memory: whole files to replace, bytes to
+ *  write at an offset of an append-only file, and files to delete.
+ *  commit first forces to disk the new objects they may refer to, then
+ *  writes the journal file, followed by the SHA-1 of its contents, and
+ *  forces it.  Only then are the changes applied: replaced files are
+ *  written beside the journal and renamed over the old ones, so that a
+ *  reader sees either the old file or the new.  Once the changed files
+ *  and their directories are forced, the journal is deleted.
+ *
+ *  A crash before the journal is complete leaves the state files as
+ *  they were, and the incomplete journal fails its checksum and is
+ *  discarded.  A crash after that leaves a complete journal, which
+ *  recover applies again the next time gitlet runs; applying a change
+ *  twice does no harm.  So all of gitlet's writes to disk happen
+ *  together at the end of a command, with one batch of fsyncs.
+ *  @author Kevin Ren
+ */
+class Journal {
+
+    /** Magic number at the start of a journal file. */
+    private static final int MAGIC = 0x474c4a4e;
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+    /** Type of a change replacing a whole file. */
+    private static final int REPLACE = 0;
+    /** Type of a change writing at an offset of a file, discarding what
+     *  followed it. */
+    private static final int WRITE = 1;
+    /** Type of a change deleting a file. */
+    private static final int DELETE = 2;
+    /** Prefix of the names of the temporary files of replaced files. */
+    private static final String TEMP_PREFIX = "tmp-";
+
+    /** One staged change. */
+    private static class Change {
+        /** A change of type TYPE to FILE, writing CONTENTS at OFFSET. */
+        Change(int type, File file, long offset, byte[] contents) {
+            _type = type;
+            _file = file;
+            _offset = offset;
+            _contents = contents;
+        }
+
+        /** Type of change. */
+        private final int _type;
+        /** File changed. */
+        private final File _file;
+        /** Offset of the write. */
+        private final long _offset;
+        /** Bytes written. */
+        private final byte[] _contents;
+    }
+
+    /** A journal kept in FILE. */
+    Journal(File file) {
+        _file = file;
+        _changes = new ArrayList<>();
+        _synced = new ArrayList<>();
+        _after = new ArrayList<>();
+    }
+
+    /** Stages the replacement of FILE's contents with CONTENTS. */
+    void replace(File file, byte[] contents) {
+        _changes.add(new Change(REPLACE, file, 0, contents));
+    }
+
+    /** Stages writing CONTENTS to FILE at OFFSET, discarding anything
+     *  after OFFSET. */
+    void write(File file, long offset, byte[] contents) {
+        _changes.add(new Change(WRITE, file, offset, contents));
+    }
+
+    /** Stages the deletion of FILE. */
+    void delete(File file) {
+        _changes.add(new Change(DELETE, file, 0, new byte[0]));
+    }
+
+    /** Arranges for FILES, already written, to be forced to disk before
+     *  the changes are applied. */
+    void sync(Collection<File> files) {
+        _synced.addAll(files);
+    }
+
+    /** Arranges for ACTION to run once the changes are applied. */
+    void afterCommit(Runnable action) {
+        _after.add(action);
+    }
+
+    /** Makes the staged changes, as the class comment describes. */
+    void commit() {
+        force(_synced);
+        _synced.clear();
+        if (!_changes.isEmpty()) {
+            try {
+                Files.write(_file.toPath(), encode());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            force(List.of(_file));
+            apply(_changes, _file.getParentFile());
+            _file.delete();
+            _changes.clear();
+        }
+        _after.forEach(Runnable::run);
+        _after.clear();
+    }
+
+    /** Applies the journal in FILE, if there is one and it is complete,
+     *  and then deletes it along with any temporary files left beside
+     *  it. */
+    static void recover(File file) {
+        if (!file.exists()) {
+            return;
+        }
+        List<Change> changes = decode(Utils.readContents(file));
+        if (changes != null) {
+            apply(changes, file.getParentFile());
+        }
+        file.delete();
+        File[] temps = file.getParentFile().listFiles(
+            (dir, name) -> name.startsWith(TEMP_PREFIX));
+        if (temps != null) {
+            Arrays.stream(temps).forEach(File::delete);
+        }
+    }
+
+    /** Forces the contents of FILES, and the directory entries of their
+     *  parent directories, to disk, several at a time. */
+    static void force(Collection<File> files) {
+        LinkedHashSet<File> all = new LinkedHashSet<>();
+        for (File file : files) {
+            all.add(file);
+            all.add(file.getAbsoluteFile().getParentFile());
+        }
+        all.parallelStream().forEach(Journal::force);
+    }
+
+    /** Forces the contents of FILE, which may be a directory, to disk.
+     *  Files that are gone, and directories on systems that cannot open
+     *  them, are skipped. */
+    private static void force(File file) {
+        if (!file.exists()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(
+                 file.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            if (!file.isDirectory()) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Makes CHANGES, writing replacement files in directory TEMPS, and
+     *  forces the files changed to disk. */
+    private static void apply(List<Change> changes, File temps) {
+        ArrayList<File> changed = new ArrayList<>();
+        try {
+            for (Change change : changes) {
+                Path path = change._file.toPath();
+                if (change._type != DELETE) {
+                    Files.createDirectories(path.toAbsolutePath().getParent());
+                }
+                switch (change._type) {
+                case REPLACE:
+                    Path temp = Files.createTempFile(temps.toPath(),
+                                                     TEMP_PREFIX, "");
+                    Files.write(temp, change._contents);
+                    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                               StandardCopyOption.ATOMIC_MOVE);
+                    break;
+                case WRITE:
+                    try (FileChannel channel = FileChannel.open(
+                             path, StandardOpenOption.CREATE,
+                             StandardOpenOption.WRITE)) {
+                        channel.truncate(change._offset);
+                        channel.write(ByteBuffer.wrap(change._contents),
+                                      change._offset);
+                    }
+                    break;
+                default:
+                    Files.deleteIfExists(path);
+                    break;
+                }
+                changed.add(change._file);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        force(changed);
+    }
+
+    /** Returns the contents of the journal file for the staged
+     *  changes. */
+    private byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_changes.size());
+            for (Change change : _changes) {
+                out.writeByte(change._type);
+                out.writeUTF(change._file.getPath());
+                out.writeLong(change._offset);
+                out.writeInt(change._contents.length);
+                out.write(change._contents);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        MessageDigest digest = Utils.sha1Digest();
+        digest.update(bytes.toByteArray());
+        bytes.writeBytes(digest.digest());
+        return bytes.toByteArray();
+    }
+
+    /** Returns the changes in a journal file with contents BYTES, or null
+     *  if it is incomplete. */
+    private static List<Change> decode(byte[] bytes) {
+        int length = bytes.length - Utils.UID_LENGTH / 2;
+        if (length < 0) {
+            return null;
+        }
+        MessageDigest digest = Utils.sha1Digest();
+        digest.update(bytes, 0, length);
+        if (!Arrays.equals(digest.digest(),
+                           Arrays.copyOfRange(bytes, length, bytes.length))) {
+            return null;
+        }
+        ArrayList<Change> changes = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(
+                 new ByteArrayInputStream(bytes, 0, length))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                int type = in.readByte();
+                File file = new File(in.readUTF());
+                long offset = in.readLong();
+                byte[] contents = new byte[in.readInt()];
+                in.readFully(contents);
+                changes.add(new Change(type, file, offset, contents));
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+        return changes;
+    }
+
+    /** The journal file. */
+    private final File _file;
+    /** Changes staged so far, in order. */
+    private final ArrayList<Change> _changes;
+    /** Files to force before applying the changes. */
+    private final ArrayList<File> _synced;
+    /** Actions to run once the changes are applied. */
+    private final ArrayList<Runnable> _after;
+}
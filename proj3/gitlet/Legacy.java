@@ -0,0 +1,227 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The state of a repository written by the first version of gitlet,
+ *  read so that migrate can convert it.
+ *
+ *  That version kept its whole Repo object, with the branches, the
+ *  current branch and the staging area, serialized in .gitlet/repo, and
+ *  each commit serialized in .gitlet/commits, holding the contents of
+ *  all its files.  Staged files were also serialized in .gitlet/staging.
+ *  Its Commit, Blob and Repo classes are gone, so their streams are read
+ *  into the classes below, which have the same fields and serialization
+ *  ids.  Commits written by later versions with Java serialization are
+ *  read as Commits.
+ *  @author Kevin Ren
+ */
+class Legacy {
+
+    /** The commit class of the first version of gitlet. */
+    private static final class OldCommit implements Serializable {
+        /** Serialization id of the first version's Commit. */
+        private static final long serialVersionUID = -1524901852039894027L;
+        /** Log message for the commit. */
+        private String _log;
+        /** The timestamp of the commit. */
+        private String _timeStamp;
+        /** Mapping of files to blobs, or null for an initial commit. */
+        private HashMap<String, OldBlob> _map;
+        /** SHA-1 of the commit. */
+        private String _sha1;
+        /** Parent identifier. */
+        private String _pid;
+        /** Branch location. */
+        private String _branch;
+        /** Contents of the blobs in the commit. */
+        private ArrayList<byte[]> _contents;
+    }
+
+    /** The blob class of the first version of gitlet. */
+    private static final class OldBlob implements Serializable {
+        /** Serialization id of the first version's Blob. */
+        private static final long serialVersionUID = 3353314363113096707L;
+        /** SHA-1 of the blob. */
+        private String _sha1;
+        /** Name of the blob. */
+        private String _name;
+        /** Contents of File. */
+        private byte[] _contents;
+        /** Contents of File as a string. */
+        private String _string;
+    }
+
+    /** The repository class of the first version of gitlet. */
+    private static final class OldRepo implements Serializable {
+        /** Serialization id of the first version's Repo. */
+        private static final long serialVersionUID = 4659912885934169049L;
+        /** Tree of commits. */
+        private HashMap<String, OldCommit> _commits;
+        /** Map of branches. */
+        private HashMap<String, String> _branches;
+        /** Head pointer. */
+        private String _head;
+        /** All removed files. */
+        private ArrayList<String> _removed;
+        /** Parent ID. */
+        private String _pid;
+        /** Staging area. */
+        private HashMap<String, OldBlob> _staging;
+        /** Current snapshot. */
+        private HashMap<String, OldBlob> _snapshot;
+        /** Given branch's modified files. */
+        private ArrayList<String> _givenMod;
+        /** Current branch's modified files. */
+        private ArrayList<String> _currentMod;
+        /** Split. */
+        private OldCommit _split;
+    }
+
+    /** A stream reading the first version's classes as the classes
+     *  above. */
+    private static class Input extends ObjectInputStream {
+
+        /** A stream reading from IN. */
+        Input(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+            throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            for (Class<?> old : OLD_CLASSES) {
+                ObjectStreamClass local = ObjectStreamClass.lookup(old);
+                if (desc.getName().equals(OLD_NAMES.get(old))
+                    && desc.getSerialVersionUID()
+                       == local.getSerialVersionUID()) {
+                    return local;
+                }
+            }
+            return desc;
+        }
+    }
+
+    /** The classes standing in for the first version's classes. */
+    private static final List<Class<?>> OLD_CLASSES =
+        List.of(OldCommit.class, OldBlob.class, OldRepo.class);
+    /** The names of the first version's classes, by the classes standing
+     *  in for them. */
+    private static final Map<Class<?>, String> OLD_NAMES =
+        Map.of(OldCommit.class, "gitlet.Commit", OldBlob.class, "gitlet.Blob",
+               OldRepo.class, "gitlet.Repo");
+
+    /** Returns the state of the repository in directory GITLET, or null
+     *  if it was not written by the first version of gitlet. */
+    static Legacy read(File gitlet) {
+        File file = Utils.join(gitlet, "repo");
+        if (!file.isFile()) {
+            return null;
+        }
+        Object repo = readObject(Utils.readContents(file));
+        if (!(repo instanceof OldRepo)) {
+            Utils.message("Unrecognized repository file.");
+            throw new GitletException();
+        }
+        return new Legacy((OldRepo) repo);
+    }
+
+    /** The state held by REPO. */
+    private Legacy(OldRepo repo) {
+        _repo = repo;
+    }
+
+    /** Returns the name of the current branch. */
+    String head() {
+        return _repo._head;
+    }
+
+    /** Returns the commit ids of the branches, by name. */
+    Map<String, String> branches() {
+        return _repo._branches;
+    }
+
+    /** Returns the names of the files staged for removal. */
+    List<String> removed() {
+        return _repo._removed == null ? List.of() : _repo._removed;
+    }
+
+    /** Writes the contents of the files staged for addition to BLOBS,
+     *  and returns their blob ids by file name. */
+    TreeMap<String, String> staged(ObjectStore blobs) {
+        return putBlobs(_repo._staging, blobs);
+    }
+
+    /** Returns the commit serialized in BYTES, by the first version of
+     *  gitlet or a later one, writing the contents of its files to
+     *  BLOBS if it holds them. */
+    static Commit commit(byte[] bytes, ObjectStore blobs) {
+        Object obj = readObject(bytes);
+        if (obj instanceof Commit) {
+            return (Commit) obj;
+        } else if (!(obj instanceof OldCommit)) {
+            Utils.message("Unrecognized commit format.");
+            throw new GitletException();
+        }
+        OldCommit old = (OldCommit) obj;
+        return Commit.flat(old._sha1, old._pid, old._log, old._timeStamp,
+                           old._branch, putBlobs(old._map, blobs));
+    }
+
+    /** Stages in JOURNAL the deletion of the files of the first version
+     *  of gitlet in directory GITLET that the current version does not
+     *  use: the serialized Repo and staged files. */
+    static void drop(File gitlet, Journal journal) {
+        File staging = Utils.join(gitlet, "staging");
+        List<String> names = Utils.plainFilenamesIn(staging);
+        if (names != null) {
+            names.forEach(name -> journal.delete(Utils.join(staging, name)));
+            journal.afterCommit(staging::delete);
+        }
+        File repo = Utils.join(gitlet, "repo");
+        if (repo.isFile()) {
+            journal.delete(repo);
+        }
+    }
+
+    /** Writes the contents of the blobs in FILES, a map of file names to
+     *  blobs that may be null, to BLOBS, and returns their blob ids by
+     *  file name. */
+    private static TreeMap<String, String> putBlobs(
+        Map<String, OldBlob> files, ObjectStore blobs) {
+        TreeMap<String, String> ids = new TreeMap<>();
+        if (files != null) {
+            for (Map.Entry<String, OldBlob> entry : files.entrySet()) {
+                byte[] contents = entry.getValue()._contents;
+                String id = Blob.id(contents);
+                blobs.put(id, contents);
+                ids.put(entry.getKey(), id);
+            }
+        }
+        return ids;
+    }
+
+    /** Returns the object serialized in BYTES. */
+    private static Object readObject(byte[] bytes) {
+        try (ObjectInputStream in =
+                 new Input(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The serialized Repo. */
+    private final OldRepo _repo;
+}
@@ -0,0 +1,37 @@
+package gitlet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A map holding at most a fixed number of entries, which discards the
+ *  least recently used entry to make room for a new one.
+ *  @author Kevin Ren
+ */
+class LruCache<K, V> {
+
+    /** A cache holding at most CAPACITY entries. */
+    LruCache(int capacity) {
+        _capacity = capacity;
+        _entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > _capacity;
+            }
+        };
+    }
+
+    /** Returns the value cached for KEY, or null if there is none. */
+    V get(K key) {
+        return _entries.get(key);
+    }
+
+    /** Caches VALUE for KEY. */
+    void put(K key, V value) {
+        _entries.put(key, value);
+    }
+
+    /** Maximum number of entries. */
+    private final int _capacity;
+    /** The entries, least recently used first. */
+    private final LinkedHashMap<K, V> _entries;
+}
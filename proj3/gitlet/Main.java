@@ -1,6 +1,5 @@
 package gitlet;
 
-import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -13,49 +12,88 @@ import java.util.List;
 public class Main {
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+     *  <COMMAND> <OPERAND> ....  The command is sent to the gitlet
+     *  daemon if one is serving this directory.  The daemon and batch
+     *  commands manage the Repo themselves. */
     public static void main(String... args) {
         try {
-            if (args.length == 0) {
-                Utils.message("Please enter a command.");
-                throw new GitletException();
-            }
-            String command = args[0];
-            if (isValid(command)) {
-                String[] opArr = Arrays.copyOfRange(args, 1, args.length);
-                ArrayList<String> operands = new ArrayList<>();
-                operands.addAll(Arrays.asList(opArr));
-                if (initialized()) {
-                    File repoFile = new File(path);
-                    repo = Utils.readObject(repoFile, Repo.class);
-                    if (commands1.contains(command)) {
-                        execute(command, operands);
-                    } else if (commands2.contains(command)) {
-                        execute2(command, operands);
-                    } else if (commands3.contains(command)) {
-                        execute3(command, operands);
+            if (args.length > 0 && args[0].equals("daemon")) {
+                Daemon.start(Arrays.copyOfRange(args, 1, args.length));
+            } else if (args.length > 0 && args[0].equals("batch")) {
+                Batch.start(Arrays.copyOfRange(args, 1, args.length));
+            } else if (!Daemon.forward(args)) {
+                boolean writes = writes(args);
+                WriteLock lock =
+                    writes && initialized() ? WriteLock.acquire() : null;
+                try {
+                    run(args, null, writes);
+                } finally {
+                    if (lock != null) {
+                        lock.close();
                     }
-                    File newFile = new File(path);
-                    Utils.writeObject(newFile, repo);
-                } else if (command.equals("init")) {
-                    repo = new Repo();
-                    File repoFile = new File(path);
-                    Utils.writeObject(repoFile, repo);
-                } else {
-                    Utils.message("Not in an initialized Gitlet directory.");
-                    throw new GitletException();
                 }
-            } else {
-                Utils.message("No command with that name exists.");
-                throw new GitletException();
             }
         } catch (GitletException e) {
             System.exit(0);
         }
     }
 
+    /** Runs the command ARGS on OPEN, or on the Repo in the current
+     *  directory if OPEN is null, and saves the changes it makes iff
+     *  SAVE.  Throws GitletException after reporting an error. */
+    static void run(String[] args, Repo open, boolean save) {
+        if (args.length == 0) {
+            Utils.message("Please enter a command.");
+            throw new GitletException();
+        }
+        String command = args[0];
+        if (isValid(command)) {
+            String[] opArr = Arrays.copyOfRange(args, 1, args.length);
+            ArrayList<String> operands = new ArrayList<>();
+            operands.addAll(Arrays.asList(opArr));
+            if (initialized()) {
+                repo = open == null ? new Repo() : open;
+                if (!command.equals("migrate")) {
+                    repo.checkFormat();
+                }
+                if (commands1.contains(command)) {
+                    execute(command, operands);
+                } else if (commands2.contains(command)) {
+                    execute2(command, operands);
+                } else if (commands3.contains(command)) {
+                    execute3(command, operands);
+                } else if (commands4.contains(command)) {
+                    execute4(command, operands);
+                }
+                if (save) {
+                    repo.save();
+                }
+            } else if (command.equals("init")) {
+                repo = new Repo();
+                repo.init();
+            } else {
+                Utils.message("Not in an initialized Gitlet directory.");
+                throw new GitletException();
+            }
+        } else {
+            Utils.message("No command with that name exists.");
+            throw new GitletException();
+        }
+    }
+
+    /** Returns true iff the command ARGS may change the repository, and
+     *  so must hold the WriteLock and save.  The others only read. */
+    static boolean writes(String... args) {
+        if (args.length == 0) {
+            return false;
+        }
+        String command = args[0];
+        return !readers.contains(command)
+            && !(command.equals("config") && args.length == 2);
+    }
+
     /** Returns true if repo has been initialized, false otherwise. */
-    private static boolean initialized() {
+    static boolean initialized() {
         return Files.exists(Paths.get(".gitlet"));
     }
 
@@ -73,11 +111,11 @@ public class Main {
                 + "already exists in the current directory.");
             throw new GitletException();
         case "add" :
-            if (operands.size() != 1) {
+            if (operands.isEmpty()) {
                 Utils.message("Incorrect operands.");
                 throw new GitletException();
             }
-            repo.add(operands.get(0));
+            repo.add(operands);
             break;
         case "commit" :
             if (operands.size() == 1) {
@@ -195,16 +233,55 @@ public class Main {
         }
     }
 
+    /** Takes in COMMAND and OPERANDS, executes the command. */
+    private static void execute4(String command,
+                                 ArrayList<String> operands) {
+        switch (command) {
+        case "migrate" :
+            if (operands.size() == 0) {
+                repo.migrate();
+                break;
+            } else {
+                Utils.message("Incorrect operands.");
+                throw new GitletException();
+            }
+        case "gc" :
+            if (operands.size() == 0) {
+                repo.gc(false);
+                break;
+            } else if (operands.size() == 1
+                       && operands.get(0).equals("--all")) {
+                repo.gc(true);
+                break;
+            } else {
+                Utils.message("Incorrect operands.");
+                throw new GitletException();
+            }
+        case "config" :
+            if (operands.size() == 1) {
+                repo.config(operands.get(0));
+                break;
+            } else if (operands.size() == 2) {
+                repo.config(operands.get(0), operands.get(1));
+                break;
+            } else {
+                Utils.message("Incorrect operands.");
+                throw new GitletException();
+            }
+        default:
+            Utils.message("something wrong");
+        }
+    }
+
     /** The big Repo. */
     private static Repo repo;
-    /** Repo path. */
-    private static String path = ".gitlet/repo";
     /** Lists all valid commands. */
     private static List<String> commands = new ArrayList<>(
             Arrays.asList("init", "add",
             "commit", "rm", "log", "global-log",
             "find", "status", "checkout",
-            "branch", "rm-branch", "reset", "merge"));
+            "branch", "rm-branch", "reset", "merge",
+            "migrate", "config", "gc"));
     /** First commands. */
     private static List<String> commands1 = new ArrayList<>(
             Arrays.asList("init", "add",
@@ -218,4 +295,10 @@ public class Main {
     private static List<String> commands3 = new ArrayList<>(
             Arrays.asList("rm", "log", "global-log",
                     "checkout"));
+    /** Commands that never change the repository. */
+    private static List<String> readers = new ArrayList<>(
+            Arrays.asList("log", "global-log", "find", "status"));
+    /** Repository maintenance commands. */
+    private static List<String> commands4 = new ArrayList<>(
+            Arrays.asList("migrate", "config", "gc"));
 }
@@ -0,0 +1,633 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** A content-addressed store of objects kept in a directory of the
+ *  .gitlet repository.  Each object lives in a file named by its SHA-1
+ *  id, so a given content is written exactly once no matter how many
+ *  commits refer to it.  The files are fanned out into subdirectories
+ *  named by the first two hex digits of the id, each file named by the
+ *  rest, so that no one directory grows too large to search quickly.
+ *
+ *  An object file starts with one byte telling how the rest is stored:
+ *  STORED for the contents as they are, or DEFLATED for the contents
+ *  compressed with java.util.zip.Deflater.  Readers decompress as they
+ *  stream, so no object is ever inflated into memory whole unless a
+ *  caller asks for its contents as an array.
+ *
+ *  Objects written one at a time are loose: each is its own file.
+ *  repack moves the loose objects, or every object, into packs in the
+ *  pack subdirectory, storing successive versions of a file as deltas.
+ *  Lookups try the loose objects first and then the packs.
+ *  @author Kevin Ren
+ */
+class ObjectStore {
+
+    /** Header byte of an object stored uncompressed. */
+    private static final int STORED = 0;
+    /** Header byte of a deflated object. */
+    private static final int DEFLATED = 1;
+    /** Number of leading hex digits of an id naming its subdirectory. */
+    private static final int SHARD_LENGTH = 2;
+    /** Size of the buffers used to copy objects. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Largest object packed by repack, which reads the contents of
+     *  each object it packs into memory.  Larger ones are left loose. */
+    private static final int MAX_PACKED_SIZE = 1 << 26;
+
+    /** A store whose objects live in directory DIR, compressing new
+     *  objects at Deflater level LEVEL (0 to store them as they are). */
+    ObjectStore(File dir, int level) {
+        _dir = dir;
+        _level = level;
+        _packDir = Utils.join(dir, "pack");
+        _unsynced = new ArrayList<>();
+    }
+
+    /** Creates the directory holding this store's objects. */
+    void create() {
+        _dir.mkdir();
+    }
+
+    /** Returns true iff an object with id ID is present.  As for open,
+     *  the packs are read again if they have changed before deciding
+     *  that it is not. */
+    boolean contains(String id) {
+        if (file(id).isFile() || packed(id)) {
+            return true;
+        }
+        return reloadPacks() && packed(id);
+    }
+
+    /** Returns true iff a pack holds the object with id ID. */
+    private boolean packed(String id) {
+        for (Pack pack : packs()) {
+            if (pack.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Stores CONTENTS under ID, unless an object with that id is
+     *  already present. */
+    void put(String id, byte[] contents) {
+        if (!contains(id)) {
+            write(file(id), new ByteArrayInputStream(contents));
+        }
+    }
+
+    /** Stores the contents of FILE as a blob and returns its id.  The
+     *  file is read once, through a fixed-size buffer, and hashed as it
+     *  is written to a temporary file, which becomes the object unless
+     *  one with that id is already present.  So the object holds exactly
+     *  the contents its id was computed from, even if the file changes
+     *  meanwhile, and the file's size does not matter. */
+    String putFile(File file) {
+        MessageDigest md = Blob.digest();
+        Path temp = null;
+        try {
+            try (InputStream in = new DigestInputStream(
+                     Files.newInputStream(file.toPath()), md)) {
+                temp = writeTemp(in);
+            }
+            String id = Utils.toHex(md.digest());
+            if (contains(id)) {
+                Files.delete(temp);
+            } else {
+                install(temp, file(id));
+            }
+            return id;
+        } catch (IOException excp) {
+            if (temp != null) {
+                temp.toFile().delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream reading the contents of the object with id
+     *  ID.  An object that is neither loose nor in the packs last read
+     *  may have been moved into a new pack by a concurrent repack, so
+     *  the packs are read again before giving up. */
+    InputStream open(String id) {
+        InputStream in = openLoose(id);
+        if (in == null) {
+            in = openPacked(id);
+        }
+        if (in == null && reloadPacks()) {
+            in = openPacked(id);
+        }
+        if (in == null) {
+            throw new IllegalArgumentException("No object " + id);
+        }
+        return in;
+    }
+
+    /** Returns a stream reading the loose object with id ID, or null if
+     *  there is none. */
+    private InputStream openLoose(String id) {
+        try {
+            return openFile(file(id));
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream reading the contents of the object in FILE. */
+    private static InputStream openFile(File file) throws IOException {
+        InputStream in = new BufferedInputStream(
+            Files.newInputStream(file.toPath()), BUFFER_SIZE);
+        if (in.read() != DEFLATED) {
+            return in;
+        }
+        return inflating(in);
+    }
+
+    /** Returns a stream reading the object with id ID from the packs,
+     *  or null if none holds it. */
+    private InputStream openPacked(String id) {
+        for (Pack pack : packs()) {
+            InputStream in = pack.open(id);
+            if (in != null) {
+                return in;
+            }
+        }
+        return null;
+    }
+
+    /** Returns a stream of the result of inflating the deflated data
+     *  read from IN.  Closing it closes IN. */
+    static InputStream inflating(InputStream in) {
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                inflater.end();
+            }
+        };
+    }
+
+    /** Returns the contents of the object with id ID. */
+    byte[] get(String id) {
+        try (InputStream in = open(id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the contents of the object with id ID to FILE, replacing
+     *  whatever FILE held and creating its directory if need be.
+     *  Only loose objects stored uncompressed, as they are when
+     *  core.compression is 0, are copied by the operating system with
+     *  FileChannel.transferTo.  Compressed and packed objects, which
+     *  are all of them at the default level, are inflated through a
+     *  fixed-size buffer. */
+    void copyTo(String id, File file) {
+        File parent = file.getAbsoluteFile().getParentFile();
+        try {
+            Files.createDirectories(parent.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (!file(id).isFile()) {
+            copyStream(id, file);
+            return;
+        }
+        try (FileChannel src = FileChannel.open(file(id).toPath())) {
+            ByteBuffer header = ByteBuffer.allocate(1);
+            src.read(header);
+            if (header.get(0) == STORED) {
+                try (FileChannel dest = FileChannel.open(
+                         file.toPath(), StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long size = src.size();
+                    for (long pos = 1; pos < size; ) {
+                        pos += src.transferTo(pos, size - pos, dest);
+                    }
+                }
+                return;
+            }
+        } catch (NoSuchFileException excp) {
+            copyStream(id, file);
+            return;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        copyStream(id, file);
+    }
+
+    /** Writes the contents of the object with id ID to FILE, replacing
+     *  whatever FILE held, through a fixed-size buffer. */
+    private void copyStream(String id, File file) {
+        try (InputStream in = open(id)) {
+            Files.copy(in, file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Overwrites the object with id ID with CONTENTS, which must be a
+     *  different representation of the same object. */
+    void replace(String id, byte[] contents) {
+        write(file(id), new ByteArrayInputStream(contents));
+    }
+
+    /** Returns the ids of the objects that older versions of gitlet
+     *  stored directly in the store's directory, rather than in
+     *  subdirectories, in lexicographic order. */
+    List<String> legacyIds() {
+        ArrayList<String> ids = new ArrayList<>();
+        List<String> names = Utils.plainFilenamesIn(_dir);
+        if (names != null) {
+            for (String name : names) {
+                if (name.length() == Utils.UID_LENGTH) {
+                    ids.add(name);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** Returns the contents of the object with id ID that an older
+     *  version of gitlet stored directly in the store's directory, with
+     *  a header byte as open reads iff HEADER. */
+    byte[] getLegacy(String id, boolean header) {
+        File file = Utils.join(_dir, id);
+        if (!header) {
+            return Utils.readContents(file);
+        }
+        try (InputStream in = openFile(file)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes each object that an older version of gitlet stored
+     *  directly in the store's directory, with a header byte iff
+     *  HEADER, into its subdirectory, leaving the old file in place. */
+    void copyLegacy(boolean header) {
+        for (String id : legacyIds()) {
+            put(id, getLegacy(id, header));
+        }
+    }
+
+    /** Stages in JOURNAL the deletion of the files of the objects that
+     *  older versions of gitlet stored directly in the store's
+     *  directory. */
+    void dropLegacy(Journal journal) {
+        for (String id : legacyIds()) {
+            journal.delete(Utils.join(_dir, id));
+        }
+    }
+
+    /** Returns the ids of all objects in the store, in lexicographic
+     *  order. */
+    List<String> ids() {
+        TreeSet<String> ids = new TreeSet<>(looseIds());
+        for (Pack pack : packs()) {
+            ids.addAll(pack.ids());
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /** Moves the loose objects, or every object in the store if ALL,
+     *  into new packs, then deletes the objects packed, and if ALL any
+     *  older packs, once the new packs and their indexes are on disk.
+     *  So the cost of packing only the loose objects grows with their
+     *  number, not with the size of the history already packed.  A
+     *  reader that finds an object gone looks for it again in the new
+     *  packs, and packs it has already mapped stay readable after they
+     *  are deleted.  Each list in CHAINS holds the ids of successive
+     *  versions of one file, oldest first; each version being packed is
+     *  stored as a delta against the one before where that is being
+     *  packed too and the delta is much smaller.  Other objects are
+     *  stored whole, and objects too large to hold in memory are left
+     *  loose, so that no pack grows much past Pack.MAX_SIZE. */
+    void repack(Collection<List<String>> chains, boolean all) {
+        List<String> ids = all ? ids() : looseIds();
+        if (ids.isEmpty()) {
+            return;
+        }
+        HashSet<String> packing = new HashSet<>(ids);
+        _packDir.mkdir();
+        Packer packer = new Packer();
+        for (List<String> chain : chains) {
+            String base = null;
+            byte[] baseContents = null;
+            for (String id : chain) {
+                if (!packing.contains(id)) {
+                    base = null;
+                    baseContents = null;
+                    continue;
+                }
+                byte[] contents = readSmall(id);
+                if (contents != null && !packer.contains(id)) {
+                    packer.add(id, contents, base, baseContents);
+                }
+                base = contents == null ? null : id;
+                baseContents = contents;
+            }
+        }
+        ArrayList<File> written = new ArrayList<>();
+        for (String id : ids) {
+            if (packer.contains(id)) {
+                continue;
+            }
+            byte[] contents = readSmall(id);
+            if (contents != null) {
+                packer.add(id, contents, null, null);
+            } else if (!file(id).isFile()) {
+                try (InputStream in = open(id)) {
+                    write(file(id), in);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+                written.add(file(id));
+            }
+        }
+        List<File> packs = packer.finish();
+        for (File pack : packs) {
+            written.add(pack);
+            written.add(Pack.indexFile(pack));
+        }
+        Journal.force(written);
+        removeRepacked(packs, packer, all);
+    }
+
+    /** Deletes the loose objects that PACKER has packed, any temporary
+     *  files left in the pack directory, and if ALL the packs other than
+     *  PACKS. */
+    private void removeRepacked(List<File> packs, Packer packer,
+                                boolean all) {
+        for (Pack old : packs()) {
+            if (all && !packs.contains(old.file())) {
+                old.file().delete();
+                Pack.indexFile(old.file()).delete();
+            }
+        }
+        for (String id : looseIds()) {
+            if (packer.contains(id)) {
+                file(id).delete();
+                file(id).getParentFile().delete();
+            }
+        }
+        for (File file : _packDir.listFiles()) {
+            if (file.getName().startsWith("tmp-")) {
+                file.delete();
+            }
+        }
+        _packs = null;
+    }
+
+    /** Writes objects into a series of new packs, beginning another
+     *  whenever the one being written reaches Pack.MAX_SIZE. */
+    private class Packer {
+
+        /** A packer that has written nothing yet. */
+        Packer() {
+            _packed = new HashSet<>();
+            _files = new ArrayList<>();
+        }
+
+        /** Returns true iff the object with id ID has been packed. */
+        boolean contains(String id) {
+            return _packed.contains(id);
+        }
+
+        /** Packs the object with id ID and contents CONTENTS, as for
+         *  Pack.Writer.add, storing it as a delta against object BASE,
+         *  with contents BASECONTENTS, only if BASE is in the same
+         *  pack. */
+        void add(String id, byte[] contents, String base,
+                 byte[] baseContents) {
+            if (_writer == null || _writer.size() >= Pack.MAX_SIZE) {
+                if (_writer != null) {
+                    _files.add(_writer.finish());
+                }
+                _writer = new Pack.Writer(_packDir, _level);
+            }
+            if (base != null && _writer.contains(base)) {
+                _writer.add(id, contents, base, baseContents);
+            } else {
+                _writer.add(id, contents, null, null);
+            }
+            _packed.add(id);
+        }
+
+        /** Completes the last pack, and returns the pack files
+         *  written. */
+        List<File> finish() {
+            if (_writer != null) {
+                _files.add(_writer.finish());
+                _writer = null;
+            }
+            return _files;
+        }
+
+        /** The pack being written, or null if none is. */
+        private Pack.Writer _writer;
+        /** Ids of the objects packed. */
+        private final HashSet<String> _packed;
+        /** The packs completed. */
+        private final ArrayList<File> _files;
+    }
+
+    /** Forgets the packs read so far, so that packs() reads them
+     *  again, if the files in the pack directory have changed since,
+     *  and returns true iff they have. */
+    private synchronized boolean reloadPacks() {
+        if (_packs == null
+            || Objects.equals(Utils.plainFilenamesIn(_packDir), _packNames)) {
+            return false;
+        }
+        _packs = null;
+        return true;
+    }
+
+    /** Returns the files of the loose objects written since the last
+     *  call, which have not yet been forced to disk. */
+    List<File> unsynced() {
+        synchronized (_unsynced) {
+            List<File> result = new ArrayList<>(_unsynced);
+            _unsynced.clear();
+            return result;
+        }
+    }
+
+    /** Returns the contents of the object with id ID, or null if it is
+     *  larger than MAX_PACKED_SIZE bytes. */
+    private byte[] readSmall(String id) {
+        try (InputStream in = open(id)) {
+            byte[] contents = in.readNBytes(MAX_PACKED_SIZE + 1);
+            return contents.length > MAX_PACKED_SIZE ? null : contents;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the ids of the loose objects, in lexicographic order. */
+    List<String> looseIds() {
+        ArrayList<String> ids = new ArrayList<>();
+        String[] shards = _dir.list();
+        if (shards == null) {
+            return ids;
+        }
+        Arrays.sort(shards);
+        for (String shard : shards) {
+            if (shard.length() != SHARD_LENGTH) {
+                continue;
+            }
+            List<String> names = Utils.plainFilenamesIn(
+                Utils.join(_dir, shard));
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                if (name.length() == Utils.UID_LENGTH - SHARD_LENGTH) {
+                    ids.add(shard + name);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** Returns the complete packs in the store, reading their indexes
+     *  the first time they are needed.  Synchronized so that threads
+     *  writing files out of the store share one set of packs.  A pack
+     *  deleted by a concurrent repack before it is mapped is skipped. */
+    private synchronized List<Pack> packs() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            List<String> names = Utils.plainFilenamesIn(_packDir);
+            _packNames = names;
+            if (names != null) {
+                for (String name : names) {
+                    File file = Utils.join(_packDir, name);
+                    if (name.endsWith(".pack")
+                        && Pack.indexFile(file).isFile()) {
+                        try {
+                            _packs.add(new Pack(file));
+                        } catch (IllegalArgumentException excp) {
+                            if (file.isFile()) {
+                                throw excp;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** Writes the bytes read from IN to FILE as an object, compressed
+     *  at this store's level.  The object is written to a temporary
+     *  file that is renamed into place once complete, so a reader (or
+     *  a later put) never sees a partial object. */
+    private void write(File file, InputStream in) {
+        Path temp = null;
+        try {
+            temp = writeTemp(in);
+            install(temp, file);
+        } catch (IOException excp) {
+            if (temp != null) {
+                temp.toFile().delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the bytes read from IN, compressed at this store's level,
+     *  to a new temporary file in the store's directory, and returns
+     *  its path. */
+    private Path writeTemp(InputStream in) throws IOException {
+        Path temp = Files.createTempFile(_dir.toPath(), "tmp-", "");
+        try (OutputStream out = new BufferedOutputStream(
+                 Files.newOutputStream(temp), BUFFER_SIZE)) {
+            if (_level == 0) {
+                out.write(STORED);
+                in.transferTo(out);
+            } else {
+                out.write(DEFLATED);
+                Deflater deflater = new Deflater(_level);
+                try (DeflaterOutputStream zip = new DeflaterOutputStream(
+                         out, deflater, BUFFER_SIZE)) {
+                    in.transferTo(zip);
+                } finally {
+                    deflater.end();
+                }
+            }
+        } catch (IOException excp) {
+            temp.toFile().delete();
+            throw excp;
+        }
+        return temp;
+    }
+
+    /** Renames the complete object TEMP to FILE, and records FILE as
+     *  not yet forced to disk. */
+    private void install(Path temp, File file) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        synchronized (_unsynced) {
+            _unsynced.add(file);
+        }
+    }
+
+    /** Returns the file holding the object with id ID. */
+    private File file(String id) {
+        if (id.length() <= SHARD_LENGTH) {
+            return Utils.join(_dir, id);
+        }
+        return Utils.join(_dir, id.substring(0, SHARD_LENGTH),
+                          id.substring(SHARD_LENGTH));
+    }
+
+    /** Directory containing the objects. */
+    private final File _dir;
+    /** Directory containing the packs. */
+    private final File _packDir;
+    /** The packs, or null if not yet read. */
+    private ArrayList<Pack> _packs;
+    /** Names of the files in the pack directory when _packs was read. */
+    private List<String> _packNames;
+    /** Loose object files written and not yet forced to disk. */
+    private final ArrayList<File> _unsynced;
+    /** Deflater level for new objects, or 0 to store them as they
+     *  are. */
+    private final int _level;
+}
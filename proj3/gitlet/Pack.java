@@ -0,0 +1,412 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/** A packfile: many objects in one file, with an index of where each
+ *  one starts.
+ *
+ *  The pack file is a header (magic number, version and object count)
+ *  followed by one entry per object.  An entry is a type byte, the
+ *  length of the object's contents and, for a DELTA entry, the offset
+ *  of the entry it is a delta against; then the deflated contents (for
+ *  a FULL entry) or the deflated Delta.  A delta's base always precedes
+ *  it in the file, and chains of deltas are at most MAX_DEPTH long.
+ *
+ *  The index file, with the same name ending in .idx, is a header, the
+ *  ids of the objects in sorted order and then their offsets in the
+ *  pack.  It is written after the pack, so a pack without an index is
+ *  incomplete and ignored.  A pack is named by the SHA-1 of its
+ *  contents, so a name never stands for two different packs.
+ *
+ *  Both files are read through memory mappings, made once when the
+ *  Pack is opened, so a lookup is a binary search of the mapped index
+ *  and reading an object inflates straight out of the mapped pack.
+ *  Only absolute reads of the mappings are used, so one Pack may be
+ *  read by several threads at once.  A mapping is limited to 2 GB, and
+ *  so is a pack: ObjectStore.repack begins a new pack once one reaches
+ *  MAX_SIZE, and packs no object so large that the pack could then
+ *  pass 2 GB.
+ *  @author Kevin Ren
+ */
+class Pack {
+
+    /** Magic number at the start of a pack file. */
+    private static final int PACK_MAGIC = 0x474c504b;
+    /** Magic number at the start of a pack index file. */
+    private static final int INDEX_MAGIC = 0x474c5049;
+    /** Version of the file formats. */
+    private static final int VERSION = 1;
+    /** Size of the pack and index file headers in bytes. */
+    private static final int HEADER = 12;
+    /** Type byte of an entry holding the whole object. */
+    private static final int FULL = 0;
+    /** Type byte of an entry holding a delta. */
+    private static final int DELTA = 1;
+    /** Size in bytes of the start of a FULL entry. */
+    private static final int FULL_HEADER = 1 + 8;
+    /** Size in bytes of the start of a DELTA entry. */
+    private static final int DELTA_HEADER = 1 + 8 + 8;
+    /** Size of an object id in bytes. */
+    private static final int ID_SIZE = Utils.UID_LENGTH / 2;
+    /** Longest chain of deltas written. */
+    static final int MAX_DEPTH = 10;
+    /** Size of the buffers used to copy entries. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Size in bytes past which no more objects are added to a pack. */
+    static final long MAX_SIZE = 1L << 30;
+
+    /** The pack in FILE, whose index must exist. */
+    Pack(File file) {
+        _file = file;
+        _index = map(indexFile(file), INDEX_MAGIC);
+        _data = map(file, PACK_MAGIC);
+        _count = _index.getInt(8);
+    }
+
+    /** Returns FILE mapped into memory, checking that it starts with
+     *  MAGIC and the current version. */
+    private static MappedByteBuffer map(File file, int magic) {
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            MappedByteBuffer buffer =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER || buffer.getInt(0) != magic
+                || buffer.getInt(4) != VERSION) {
+                Utils.message("Unrecognized pack file %s.", file);
+                throw new GitletException();
+            }
+            return buffer;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the index file of the pack in FILE. */
+    static File indexFile(File file) {
+        String name = file.getName();
+        return new File(file.getParentFile(),
+                        name.substring(0, name.lastIndexOf('.')) + ".idx");
+    }
+
+    /** Returns the file holding this pack. */
+    File file() {
+        return _file;
+    }
+
+    /** Returns true iff this pack holds the object with id ID. */
+    boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /** Returns the ids of the objects in this pack, in sorted order. */
+    List<String> ids() {
+        ArrayList<String> ids = new ArrayList<>();
+        byte[] id = new byte[ID_SIZE];
+        for (int i = 0; i < _count; i += 1) {
+            _index.get(HEADER + i * ID_SIZE, id);
+            ids.add(Utils.toHex(id));
+        }
+        return ids;
+    }
+
+    /** Returns a stream reading the contents of the object with id ID,
+     *  or null if this pack does not hold it.  A whole object is
+     *  inflated as it is read; one stored as a delta is rebuilt in
+     *  memory first. */
+    InputStream open(String id) {
+        int i = find(id);
+        if (i < 0) {
+            return null;
+        }
+        int offset = offset(i);
+        if (_data.get(offset) != FULL) {
+            return new ByteArrayInputStream(read(offset));
+        }
+        Inflater inflater = new Inflater();
+        inflater.setInput(_data.slice(offset + FULL_HEADER,
+                                      _data.limit() - offset - FULL_HEADER));
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                try {
+                    int n = 0;
+                    while (n == 0 && len > 0 && !inflater.finished()) {
+                        n = inflater.inflate(b, off, len);
+                        if (n == 0 && inflater.needsInput()) {
+                            throw new IOException("truncated pack entry");
+                        }
+                    }
+                    return n == 0 && len > 0 ? -1 : n;
+                } catch (DataFormatException excp) {
+                    throw new IOException(excp.getMessage());
+                }
+            }
+
+            @Override
+            public void close() {
+                inflater.end();
+            }
+        };
+    }
+
+    /** Returns the contents of the entry at OFFSET, applying deltas as
+     *  needed. */
+    private byte[] read(int offset) {
+        if (_data.get(offset) == FULL) {
+            return inflate(offset + FULL_HEADER);
+        }
+        byte[] base = read((int) _data.getLong(offset + FULL_HEADER));
+        return Delta.apply(base, inflate(offset + DELTA_HEADER));
+    }
+
+    /** Returns the result of inflating the deflated data starting at
+     *  POSITION of the pack. */
+    private byte[] inflate(int position) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(_data.slice(position, _data.limit() - position));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && inflater.needsInput()) {
+                    throw new IllegalArgumentException("truncated pack entry");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Returns the offset in the pack of the entry of the Ith object in
+     *  sorted order. */
+    private int offset(int i) {
+        return (int) _index.getLong(HEADER + _count * ID_SIZE + i * 8);
+    }
+
+    /** Returns the position of ID among this pack's sorted ids, or a
+     *  negative number if it is absent. */
+    private int find(String id) {
+        ByteBuffer key = ByteBuffer.wrap(Utils.fromHex(id));
+        int lo = 0;
+        int hi = _count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            ByteBuffer entry = _index.slice(HEADER + mid * ID_SIZE, ID_SIZE);
+            int i = entry.mismatch(key);
+            if (i == -1) {
+                return mid;
+            } else if (Byte.toUnsignedInt(entry.get(i))
+                       < Byte.toUnsignedInt(key.get(i))) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Builds a new pack, one entry at a time. */
+    static class Writer {
+        /** A writer of a new pack in directory DIR, deflating entries at
+         *  level LEVEL. */
+        Writer(File dir, int level) {
+            _dir = dir;
+            _level = level;
+            _offsets = new HashMap<>();
+            _depths = new HashMap<>();
+            try {
+                _temp = Files.createTempFile(dir.toPath(), "tmp-", "");
+                _channel = FileChannel.open(_temp, StandardOpenOption.WRITE);
+                _out = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(_channel), BUFFER_SIZE));
+                _out.writeInt(PACK_MAGIC);
+                _out.writeInt(VERSION);
+                _out.writeInt(0);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Returns true iff the object with id ID has been written. */
+        boolean contains(String id) {
+            return _offsets.containsKey(id);
+        }
+
+        /** Writes the object with id ID and contents CONTENTS.  If BASE
+         *  is not null, it is the id of an object already written, with
+         *  contents BASECONTENTS, and the object is written as a delta
+         *  against it when that is much smaller and the chain of deltas
+         *  is not already MAX_DEPTH long. */
+        void add(String id, byte[] contents, String base,
+                 byte[] baseContents) {
+            try {
+                long offset = start(id);
+                int depth = base == null ? MAX_DEPTH : _depths.get(base);
+                byte[] delta = depth < MAX_DEPTH
+                    ? Delta.create(baseContents, contents) : null;
+                if (delta != null && delta.length < contents.length / 2) {
+                    _out.writeByte(DELTA);
+                    _out.writeLong(contents.length);
+                    _out.writeLong(_offsets.get(base));
+                    deflate(new ByteArrayInputStream(delta));
+                    _depths.put(id, depth + 1);
+                } else {
+                    _out.writeByte(FULL);
+                    _out.writeLong(contents.length);
+                    deflate(new ByteArrayInputStream(contents));
+                    _depths.put(id, 0);
+                }
+                _offsets.put(id, offset);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Returns the size in bytes of the pack written so far. */
+        long size() {
+            try {
+                _out.flush();
+                return _channel.position();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Completes the pack and its index, and returns the pack
+         *  file, which is named by the SHA-1 of its contents.  So a pack
+         *  that replaces one of the same name has the same contents, and
+         *  its index too, and readers of either see no change. */
+        File finish() {
+            ArrayList<String> ids = new ArrayList<>(_offsets.keySet());
+            ids.sort(null);
+            File pack;
+            try {
+                _out.close();
+                try (FileChannel channel = FileChannel.open(
+                         _temp, StandardOpenOption.WRITE)) {
+                    channel.write(ByteBuffer.allocate(4)
+                                  .putInt(0, ids.size()), 8);
+                }
+                pack = Utils.join(_dir, "pack-" + checksum(_temp) + ".pack");
+                Files.move(_temp, pack.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+                Path index = Files.createTempFile(_dir.toPath(), "tmp-", "");
+                try (DataOutputStream out = new DataOutputStream(
+                         new BufferedOutputStream(
+                             Files.newOutputStream(index)))) {
+                    out.writeInt(INDEX_MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeInt(ids.size());
+                    for (String id : ids) {
+                        out.write(Utils.fromHex(id));
+                    }
+                    for (String id : ids) {
+                        out.writeLong(_offsets.get(id));
+                    }
+                }
+                Files.move(index, indexFile(pack).toPath(),
+                           StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return pack;
+        }
+
+        /** Returns the SHA-1 of the contents of FILE, in hex. */
+        private static String checksum(Path file) throws IOException {
+            MessageDigest digest = Utils.sha1Digest();
+            try (InputStream in = new DigestInputStream(
+                     Files.newInputStream(file), digest)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            return Utils.toHex(digest.digest());
+        }
+
+        /** Returns the offset at which the entry for ID will start,
+         *  which must not yet have been written. */
+        private long start(String id) throws IOException {
+            if (_offsets.containsKey(id)) {
+                throw new IllegalArgumentException("object packed twice");
+            }
+            _out.flush();
+            return _channel.position();
+        }
+
+        /** Writes the bytes read from IN, deflated, and returns how many
+         *  were read.  The deflating stream is finished but not closed,
+         *  which would close the pack. */
+        private long deflate(InputStream in) throws IOException {
+            Deflater deflater = new Deflater(_level);
+            try {
+                DeflaterOutputStream zip =
+                    new DeflaterOutputStream(_out, deflater, BUFFER_SIZE);
+                long size = in.transferTo(zip);
+                zip.finish();
+                return size;
+            } finally {
+                deflater.end();
+            }
+        }
+
+        /** Directory holding the pack. */
+        private final File _dir;
+        /** Deflater level for entries. */
+        private final int _level;
+        /** The pack as written so far. */
+        private Path _temp;
+        /** Channel on _temp. */
+        private FileChannel _channel;
+        /** Buffered stream writing to _channel. */
+        private DataOutputStream _out;
+        /** Offsets of the entries written, by object id. */
+        private final HashMap<String, Long> _offsets;
+        /** Lengths of the delta chains of the entries written, by object
+         *  id. */
+        private final HashMap<String, Integer> _depths;
+    }
+
+    /** File holding the pack. */
+    private final File _file;
+    /** The mapped index file. */
+    private final MappedByteBuffer _index;
+    /** The mapped pack file. */
+    private final MappedByteBuffer _data;
+    /** Number of objects in the pack. */
+    private final int _count;
+}
@@ -0,0 +1,147 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/** The branch pointers of a repository.  HEAD names the current branch
+ *  and each branch is a small file under refs/heads holding the id of
+ *  its head commit.  Files are read only when first asked for, and only
+ *  the ones that changed are written back by save.  A branch name is
+ *  the name of its file, so it may not hold a path separator or "..";
+ *  there are no branches with other names.
+ *  @author Kevin Ren
+ */
+class Refs {
+
+    /** Refs of the repository in directory GITLET. */
+    Refs(File gitlet) {
+        _headFile = Utils.join(gitlet, "HEAD");
+        _heads = Utils.join(gitlet, "refs", "heads");
+        _branches = new HashMap<>();
+        _changed = new HashMap<>();
+    }
+
+    /** Creates the refs of a new repository whose current branch is
+     *  BRANCH, pointing at commit ID. */
+    void init(String branch, String id) {
+        _heads.mkdirs();
+        setHead(branch);
+        put(branch, id);
+    }
+
+    /** Returns true iff NAME may name a branch: it is not empty, and
+     *  names a file directly under refs/heads. */
+    static boolean isValid(String name) {
+        return !name.isEmpty() && !name.equals(".") && !name.contains("..")
+            && name.indexOf('/') < 0 && name.indexOf('\\') < 0
+            && name.indexOf('\0') < 0;
+    }
+
+    /** Returns the name of the current branch. */
+    String head() {
+        if (_head == null) {
+            _head = Utils.readContentsAsString(_headFile);
+        }
+        return _head;
+    }
+
+    /** Makes BRANCH the current branch. */
+    void setHead(String branch) {
+        _head = branch;
+        _headChanged = true;
+    }
+
+    /** Returns the commit id BRANCH points at, or null if there is no
+     *  such branch. */
+    String get(String branch) {
+        if (!isValid(branch)) {
+            return null;
+        } else if (!_branches.containsKey(branch)) {
+            File file = Utils.join(_heads, branch);
+            String id = file.isFile() ? Utils.readContentsAsString(file)
+                : null;
+            _branches.put(branch, id);
+        }
+        return _branches.get(branch);
+    }
+
+    /** Returns true iff BRANCH exists. */
+    boolean contains(String branch) {
+        return get(branch) != null;
+    }
+
+    /** Points BRANCH at commit ID, creating it if needed. */
+    void put(String branch, String id) {
+        checkValid(branch);
+        _branches.put(branch, id);
+        _changed.put(branch, id);
+    }
+
+    /** Deletes BRANCH. */
+    void remove(String branch) {
+        checkValid(branch);
+        _branches.put(branch, null);
+        _changed.put(branch, null);
+    }
+
+    /** Throws IllegalArgumentException unless BRANCH is a valid branch
+     *  name. */
+    private static void checkValid(String branch) {
+        if (!isValid(branch)) {
+            throw new IllegalArgumentException("bad branch name: " + branch);
+        }
+    }
+
+    /** Returns the names of all branches in lexicographic order. */
+    List<String> branches() {
+        TreeSet<String> names =
+            new TreeSet<>(Utils.plainFilenamesIn(_heads));
+        for (Map.Entry<String, String> entry : _changed.entrySet()) {
+            if (entry.getValue() == null) {
+                names.remove(entry.getKey());
+            } else {
+                names.add(entry.getKey());
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    /** Stages in JOURNAL the writing back of every ref changed since
+     *  the last save. */
+    void save(Journal journal) {
+        if (_headChanged) {
+            journal.replace(_headFile, _head.getBytes(StandardCharsets.UTF_8));
+            _headChanged = false;
+        }
+        for (Map.Entry<String, String> entry : _changed.entrySet()) {
+            File file = Utils.join(_heads, entry.getKey());
+            if (entry.getValue() == null) {
+                journal.delete(file);
+            } else {
+                journal.replace(file, entry.getValue().getBytes(
+                    StandardCharsets.UTF_8));
+            }
+        }
+        _changed.clear();
+    }
+
+    /** File naming the current branch. */
+    private final File _headFile;
+    /** Directory holding one file per branch. */
+    private final File _heads;
+    /** Name of the current branch, or null if not yet read. */
+    private String _head;
+    /** True iff the current branch changed since the last save. */
+    private boolean _headChanged;
+    /** Branches read or written so far, mapped to their commit ids
+     *  (null for branches that do not exist). */
+    private final HashMap<String, String> _branches;
+    /** Branches changed since the last save, mapped to their new commit
+     *  ids (null for deleted branches). */
+    private final HashMap<String, String> _changed;
+}
@@ -1,160 +1,291 @@
 package gitlet;
 
 
+import java.io.DataInputStream;
 import java.io.File;
-import java.io.Serializable;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 
 /** Repo of gitlet.
  * @author Kevin Ren
  */
 
-public class Repo implements Serializable {
-    /** Tree of commits. */
-    private HashMap<String, Commit> _commits;
-    /** Map of branches. */
-    private HashMap<String, String> _branches;
-    /** Head pointer. */
-    private String _head;
-    /** All removed files. */
-    private ArrayList<String> _removed;
-    /** Parent ID. */
-    private String _pid;
-    /** Staging area. */
-    private HashMap<String, Blob> _staging;
-    /** Current snapshot. */
-    private HashMap<String, Blob> _snapshot;
-    /** Given branch's modified files. */
-    private ArrayList<String> _givenMod;
-    /** Current branch's modified files. */
-    private ArrayList<String> _currentMod;
-    /** Split. */
-    private Commit _split;
-
-    /** Constructor for a Repo. */
+public class Repo {
+    /** Current branch and branch heads. */
+    private final Refs _refs;
+    /** Staging area, or null until first needed. */
+    private Index _index;
+    /** Commit graph, or null until first needed. */
+    private CommitGraph _graph;
+    /** Commit metadata and message index, or null until first needed. */
+    private CommitLog _commitLog;
+    /** Sorted index of commit ids, or null until first needed. */
+    private IdIndex _idIndex;
+    /** Per-repository settings. */
+    private final Config _config;
+    /** True iff migrate has copied objects out of files that save must
+     *  delete. */
+    private boolean _migrated;
+    /** Content-addressed store of file contents, keyed by blob id. */
+    private final ObjectStore _blobs;
+    /** Store of encoded commits, keyed by commit id. */
+    private final ObjectStore _commits;
+    /** Store of the trees of commits' snapshots. */
+    private final TreeStore _trees;
+    /** Recently read commits, keyed by commit id. */
+    private final LruCache<String, Commit> _commitCache;
+    /** Number of decoded commits kept in memory. */
+    private static final int COMMIT_CACHE_SIZE = 256;
+    /** Length of the parent ids shown for merge commits in the log. */
+    private static final int MERGE_ID_LENGTH = 7;
+    /** Directory holding all repository state. */
+    static final File GITLET = new File(".gitlet");
+    /** File holding the staging area. */
+    private static final File INDEX = Utils.join(GITLET, "index");
+    /** File holding the commit graph. */
+    private static final File GRAPH = Utils.join(GITLET, "commit-graph");
+    /** File holding the sorted index of commit ids. */
+    private static final File ID_INDEX = Utils.join(GITLET, "commit-ids");
+    /** File holding the journal of a save in progress. */
+    static final File JOURNAL = Utils.join(GITLET, "journal");
+    /** File holding the settings. */
+    static final File CONFIG = Utils.join(GITLET, "config");
+
+    /** Constructor for the Repo in the current directory.  Nothing is
+     *  read until a command needs it, but a save interrupted by a crash
+     *  is completed first. */
     public Repo() {
+        WriteLock.recover();
+        _refs = new Refs(GITLET);
+        _config = new Config(CONFIG);
+        int level = _config.compression();
+        _blobs = new ObjectStore(Utils.join(GITLET, "objects"), level);
+        _commits = new ObjectStore(Utils.join(GITLET, "commits"), level);
+        _trees = new TreeStore(
+            new ObjectStore(Utils.join(GITLET, "trees"), level));
+        _commitCache = new LruCache<>(COMMIT_CACHE_SIZE);
+    }
+
+    /** Creates a new repository in the current directory. */
+    public void init() {
         Commit initial = new Commit("initial commit", "master");
-        File gitlet = new File(".gitlet");
-        gitlet.mkdir();
-        File commits = new File(".gitlet/commits");
-        commits.mkdir();
-        File staging = new File(".gitlet/staging");
-        staging.mkdir();
-        String id = initial.id();
-        File initFile = new File(".gitlet/commits/" + id);
-        Utils.writeContents(initFile, Utils.serialize(initial));
-        _head = "master";
-        _branches = new HashMap<>();
-        _branches.put("master", initial.id());
-        _commits = new HashMap<>();
-        _commits.put(initial.id(), initial);
-        _pid = initial.id();
-        _staging = new HashMap<>();
-        _snapshot = new HashMap<>();
-        _removed = new ArrayList<>();
+        GITLET.mkdir();
+        _config.set(Config.FORMAT_KEY, Integer.toString(Config.FORMAT));
+        _config.set(Config.COMPRESSION_KEY,
+                    Integer.toString(_config.compression()));
+        _commits.create();
+        _blobs.create();
+        _trees.create();
+        _commits.put(initial.id(), initial.encode());
+        _refs.init("master", initial.id());
+        graph().add(initial);
+        _commitLog = new CommitLog(GITLET);
+        _commitLog.add(initial);
+        _idIndex = new IdIndex(ID_INDEX);
+        _idIndex.add(initial.id());
+        save();
+    }
+
+    /** Writes back the pieces of repository state changed since the
+     *  Repo was opened, all at once through a Journal, after forcing the
+     *  objects written since then to disk.  The refs are written last,
+     *  so that they never point at commits not yet recorded.  Does
+     *  nothing after read-only commands. */
+    public void save() {
+        Journal journal = new Journal(JOURNAL);
+        journal.sync(_blobs.unsynced());
+        journal.sync(_commits.unsynced());
+        journal.sync(_trees.unsynced());
+        _config.save(journal);
+        if (_migrated) {
+            _blobs.dropLegacy(journal);
+            _commits.dropLegacy(journal);
+            _trees.dropLegacy(journal);
+            Legacy.drop(GITLET, journal);
+        }
+        if (_index != null) {
+            _index.save(INDEX, journal);
+        }
+        if (_graph != null) {
+            _graph.save(journal);
+        }
+        if (_commitLog != null) {
+            _commitLog.save(journal);
+        }
+        if (_idIndex != null) {
+            _idIndex.save(journal);
+        }
+        _refs.save(journal);
+        journal.commit();
+    }
+
+    /** Returns the staging area, reading it if necessary. */
+    private Index index() {
+        if (_index == null) {
+            _index = Index.read(INDEX);
+        }
+        return _index;
+    }
+
+    /** Returns the commit graph, reading it if necessary. */
+    private CommitGraph graph() {
+        if (_graph == null) {
+            _graph = new CommitGraph(GRAPH, this::readCommit);
+        }
+        return _graph;
+    }
+
+    /** Returns the commit metadata log, reading it if necessary.  A
+     *  repository without one gets it rebuilt from the commit store. */
+    private CommitLog commitLog() {
+        if (_commitLog == null) {
+            _commitLog = new CommitLog(GITLET);
+            if (!_commitLog.exists() && _commits.contains(headId())) {
+                _commitLog.clear();
+                ArrayList<Commit> all = new ArrayList<>();
+                for (String id : _commits.ids()) {
+                    all.add(readCommit(id));
+                }
+                all.sort((c1, c2) -> Long.compare(c1.time(), c2.time()));
+                all.forEach(_commitLog::add);
+            }
+        }
+        return _commitLog;
+    }
+
+    /** Returns the index of commit ids, reading it if necessary.  A
+     *  repository without one gets it rebuilt from the commit store. */
+    private IdIndex idIndex() {
+        if (_idIndex == null) {
+            _idIndex = new IdIndex(ID_INDEX);
+            if (!_idIndex.exists()) {
+                _idIndex.rebuild(_commits.ids());
+            }
+        }
+        return _idIndex;
+    }
+
+    /** Returns the full id of the commit whose id is or starts with ID,
+     *  or null if there is no such commit or more than one. */
+    private String resolve(String id) {
+        if (id.length() == Utils.UID_LENGTH) {
+            return _commits.contains(id) ? id : null;
+        }
+        return idIndex().resolve(id);
+    }
+
+    /** Returns the id of the current branch's head commit. */
+    private String headId() {
+        return _refs.get(_refs.head());
+    }
+
+    /** Returns the current branch's head commit. */
+    private Commit headCommit() {
+        return readCommit(headId());
+    }
+
+    /** Returns the commit with id ID, or null if there is none.  Commits
+     *  are cached once read, so the result is shared and must not be
+     *  modified. */
+    private Commit readCommit(String id) {
+        if (id == null) {
+            return null;
+        }
+        Commit commit = _commitCache.get(id);
+        if (commit != null || !_commits.contains(id)) {
+            return commit;
+        }
+        try (DataInputStream in = new DataInputStream(_commits.open(id))) {
+            commit = Commit.decode(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _commitCache.put(id, commit);
+        return commit;
+    }
+
+    /** Returns the snapshot of COMMIT, mapping the path of each file to
+     *  its blob id.  The map is shared and must not be modified. */
+    private HashMap<String, String> files(Commit commit) {
+        return _trees.files(commit.tree());
     }
 
     /** Takes in NAME, adds it to staging sometimes. */
     public void add(String name) {
-        File file = new File(name);
-        if (!file.exists()) {
+        add(List.of(name));
+    }
+
+    /** Stages the files named by OPERANDS, each a file, a directory or
+     *  a glob pattern, as WorkingTree.expand describes.  Files unchanged
+     *  since they were staged are skipped, the rest are hashed and
+     *  stored several at a time, and then the staging area is updated
+     *  with all of them. */
+    public void add(List<String> operands) {
+        TreeSet<String> names = WorkingTree.expand(new File("."), operands);
+        if (names == null) {
             Utils.message("File does not exist.");
             throw new GitletException();
         }
-        File commitFile = new File(".gitlet/commits/" + _pid);
-        Commit lastCommit = Utils.readObject(commitFile, Commit.class);
-        Blob blob = new Blob(name);
-        if (lastCommit.map() == null) {
-            File newFile = new File(".gitlet/staging/" + blob.id());
-            _staging.put(name, blob);
-            Utils.writeObject(newFile, blob);
-        } else if (lastCommit.map().containsKey(name)) {
-            File newFile = new File(".gitlet/staging/" + blob.id());
-            if (blob.id().
-                    equals(lastCommit.map().get(name).id())) {
-                if (_removed.contains(name)) {
-                    _removed.remove(name);
-                }
-                if (newFile.exists()) {
-                    _staging.remove(name);
-                    newFile.delete();
-                }
-            } else {
-                _staging.put(name, blob);
-                Utils.writeObject(newFile, blob);
+        ArrayList<String> changed = new ArrayList<>();
+        for (String name : names) {
+            if (index().cachedId(name, new File(name)) == null) {
+                changed.add(name);
             }
-        } else {
-            File newFile = new File(".gitlet/staging/" + blob.id());
-            _staging.put(name, blob);
-            Utils.writeObject(newFile, blob);
+        }
+        String[] ids = WorkingTree.add(new File("."), _blobs, changed);
+        for (int i = 0; i < ids.length; i += 1) {
+            index().put(changed.get(i), ids[i], new File(changed.get(i)));
         }
     }
 
     /** Takes in MESSAGE, and makes a commit of the current snapshot. */
     public void commit(String message) {
-        File parentFile = new File(".gitlet/commits/" + _branches.get(_head));
-        Commit parent = Utils.readObject(parentFile, Commit.class);
+        commit(message, null);
+    }
+
+    /** Makes a commit of the current snapshot with log MESSAGE, which is
+     *  a merge commit whose second parent is MERGEPID unless that is
+     *  null. */
+    private void commit(String message, String mergePid) {
+        Commit parent = headCommit();
         String pid = parent.id();
-        Commit commit = new Commit(message, pid, _snapshot, _head);
-        if (_staging.isEmpty() && _removed.isEmpty()) {
+        String tree = index().writeTree(_trees);
+        if (tree.equals(parent.tree())) {
             Utils.message("No changes added to the commit.");
             throw new GitletException();
         }
-        HashMap<String, Blob> tracked = commit.map();
-        if (_removed != null) {
-            for (String fileName : _removed) {
-                tracked.remove(fileName);
-            }
-        }
-        for (String fileName : _staging.keySet()) {
-            tracked.put(fileName, _staging.get(fileName));
-            _snapshot.put(fileName, _staging.get(fileName));
-        }
-        File newFile = new File(".gitlet/commits/" + commit.id());
-        Utils.writeObject(newFile, commit);
-
-        if (_removed != null) {
-            _removed.clear();
-        }
-        if (_staging != null) {
-            _staging.clear();
-        }
-
-        _pid = commit.id();
-        _branches.put(_head, commit.id());
+        Commit commit = new Commit(message, pid, mergePid, tree,
+                                   _refs.head());
+        CommitLog log = commitLog();
+        _commits.put(commit.id(), commit.encode());
+        graph().add(commit);
+        log.add(commit);
+        idIndex().add(commit.id());
+        _refs.put(_refs.head(), commit.id());
     }
 
     /** Unstages the FILENAME if currently staged. */
     public void rm(String fileName) {
-        File file = new File(fileName);
+        fileName = WorkingTree.path(fileName);
         boolean error = true;
-        if (!_staging.isEmpty() && _staging.containsKey(fileName)) {
-            File removed = new File(".gitlet/staging"
-                + _staging.get(fileName).id());
-            removed.delete();
-            _staging.remove(fileName);
-            if (_snapshot != null
-                    && _snapshot.containsKey(fileName)) {
-                _removed.add(fileName);
-                _snapshot.remove(fileName);
-            }
+        if (index().contains(fileName)) {
+            index().remove(fileName);
             error = false;
         }
 
-        File commitFile = new File(".gitlet/commits/" + _pid);
-        Commit lastCommit = Utils.readObject(commitFile, Commit.class);
-        HashMap<String, Blob> tracked = lastCommit.map();
-        if (tracked != null && lastCommit.map().containsKey(fileName)
-                && tracked.containsKey(fileName)) {
-            _snapshot.remove(fileName);
-            _removed.add(fileName);
-            File removed = new File(fileName);
-            removed.delete();
+        HashMap<String, String> tracked = files(headCommit());
+        if (tracked.containsKey(fileName)) {
+            WorkingTree.delete(new File("."), fileName);
             error = false;
         }
 
@@ -164,54 +295,59 @@ public class Repo implements Serializable {
         }
     }
 
-    /** Prints out a log of the current repo. */
+    /** Prints out a log of the current repo: the head commit and all
+     *  its ancestors, through both parents of merge commits, latest
+     *  first. */
     public void log() {
-        List<String> entries = new ArrayList<>();
-        String temp = _branches.get(_head);
-        while (temp != null) {
-            File commitFile = new File(".gitlet/commits/" + temp);
-            Commit commit = Utils.readObject(commitFile, Commit.class);
-            logHelper(commit.id());
-            temp = commit.pid();
+        CommitGraph graph = graph();
+        for (int pos : graph.history(headId())) {
+            Commit commit = readCommit(graph.id(pos));
+            logHelper(commit.id(), merge(commit.pid(), commit.mergePid()),
+                      commit.timeStamp(), commit.log());
         }
     }
 
-    /** Takes in ID. */
-    public void logHelper(String id) {
-        File commitFile = new File(".gitlet/commits/" + id);
-        Commit commit = Utils.readObject(commitFile, Commit.class);
+    /** Returns the parents PID and MERGEPID of a merge commit,
+     *  abbreviated as its log entry shows them, or null if MERGEPID is
+     *  null. */
+    private static String merge(String pid, String mergePid) {
+        if (mergePid == null) {
+            return null;
+        }
+        return pid.substring(0, MERGE_ID_LENGTH) + " "
+            + mergePid.substring(0, MERGE_ID_LENGTH);
+    }
+
+    /** Prints the log entry of the commit with id ID, timestamp DATE
+     *  and log message MESSAGE.  MERGE, unless null, abbreviates the
+     *  parents of a merge commit. */
+    private void logHelper(String id, String merge, String date,
+                           String message) {
         System.out.println("===");
-        System.out.println("commit " + commit.id());
-        System.out.println("Date: " + commit.timeStamp());
-        System.out.println(commit.log());
+        System.out.println("commit " + id);
+        if (merge != null) {
+            System.out.println("Merge: " + merge);
+        }
+        System.out.println("Date: " + date);
+        System.out.println(message);
         System.out.println();
     }
 
     /** Returns a global log. */
     public void globalLog() {
-        File allCommits = new File(".gitlet/commits");
-        File[] commitArr = allCommits.listFiles();
-        for (File f : commitArr) {
-            logHelper(f.getName());
-        }
+        commitLog().forEach(e -> logHelper(e.id(),
+                                           merge(e.pid(), e.mergePid()),
+                                           e.timeStamp(), e.message()));
     }
 
     /** Finds the MESSAGE from the commits. */
     public void find(String message) {
-        boolean exists = false;
-        File allCommits = new File(".gitlet/commits");
-        File[] commitArr = allCommits.listFiles();
-        for (File f : commitArr) {
-            String name = f.getName();
-            File commitFile = new File(".gitlet/commits/" + name);
-            Commit commit = Utils.readObject(commitFile, Commit.class);
-            if (commit.log().equals(message)) {
-                System.out.println(commit.id());
-                exists = true;
-            }
+        List<String> ids = commitLog().find(message);
+        for (String id : ids) {
+            System.out.println(id);
         }
 
-        if (!exists) {
+        if (ids.isEmpty()) {
             Utils.message("Found no commit with that message.");
             throw new GitletException();
         }
@@ -220,8 +356,9 @@ public class Repo implements Serializable {
     /** Returns the current status of the repo. */
     public void status() {
         System.out.println("=== Branches ===");
-        for (String branch : _branches.keySet()) {
-            if (branch.equals(_head)) {
+        String head = _refs.head();
+        for (String branch : _refs.branches()) {
+            if (branch.equals(head)) {
                 System.out.println("*" + branch);
             } else {
                 System.out.println(branch);
@@ -229,50 +366,38 @@ public class Repo implements Serializable {
         }
         System.out.println();
         System.out.println("=== Staged Files ===");
-        for (Map.Entry file : _staging.entrySet()) {
-            Blob b = (Blob) file.getValue();
-            System.out.println(b.name());
+        HashMap<String, String> tracked = files(headCommit());
+        for (String name : index().staged(tracked).keySet()) {
+            System.out.println(name);
         }
         System.out.println();
         System.out.println("=== Removed Files ===");
-        if (!_removed.isEmpty()) {
-            for (String s : _removed) {
-                System.out.println(s);
-            }
+        for (String s : index().removed(tracked)) {
+            System.out.println(s);
         }
         System.out.println();
+        WorkingTree work = new WorkingTree(new File("."), index());
         System.out.println("=== Modifications Not "
                 + "Staged For Commit ===");
+        for (Map.Entry<String, String> entry : work.modified().entrySet()) {
+            System.out.println(entry.getKey() + " (" + entry.getValue() + ")");
+        }
         System.out.println();
-        System.out.println("=== Untracked Files === ");
-    }
-
-    /** Checks for modified files, returns MODIFIED.*/
-    private List<String> checkModified() {
-        List<String> allFiles = Utils.plainFilenamesIn("user.dir");
-        List<String> modified = new ArrayList<>();
-        for (String s : allFiles) {
-            File commitFile = new File(".gitlet/commits/" + _pid);
-            Commit lastCommit = Utils.readObject(commitFile, Commit.class);
-            HashMap<String, Blob> tracked = lastCommit.map();
-            for (Map.Entry entry: tracked.entrySet()) {
-                Blob last = (Blob) entry.getValue();
-                Blob now = new Blob(s);
-                if (!last.id().equals(now.id())) {
-                    modified.add(now.name());
-                }
-            }
+        System.out.println("=== Untracked Files ===");
+        for (String s : work.untracked()) {
+            System.out.println(s);
         }
-        return modified;
+        System.out.println();
     }
 
-    /** Checkout function taking in OPERANDS. */
+    /** Checkout function taking in OPERANDS.  A commit id among them
+     *  may be abbreviated. */
     public void checkout(List<String> operands) {
         String commitID = "";
         String fileName = "";
         if (operands.size() == 2 && operands.get(0).equals("--")) {
             fileName = operands.get(1);
-            commitID = _branches.get(_head);
+            commitID = headId();
         } else if (operands.size() == 3 && operands.get(1).equals("--")) {
             commitID = operands.get(0);
             fileName = operands.get(2);
@@ -284,17 +409,16 @@ public class Repo implements Serializable {
             throw new GitletException();
         }
 
-        File commitFile = new File(".gitlet/commits/" + commitID);
-        if (!commitFile.exists()) {
+        Commit commit = readCommit(resolve(commitID));
+        if (commit == null) {
             Utils.message("No commit with that id exists.");
             throw new GitletException();
         }
-        Commit commit = Utils.readObject(commitFile, Commit.class);
-        HashMap<String, Blob> tracked = commit.map();
+        fileName = WorkingTree.path(fileName);
+        HashMap<String, String> tracked = files(commit);
         if (tracked.containsKey(fileName)) {
             File file = new File(fileName);
-            Blob blob = tracked.get(fileName);
-            Utils.writeContents(file, blob.string());
+            _blobs.copyTo(tracked.get(fileName), file);
         } else {
             Utils.message("File does not exist in that commit.");
             throw new GitletException();
@@ -303,73 +427,69 @@ public class Repo implements Serializable {
 
     /** Helper function for checking out a BRANCH. */
     public void checkoutBranch(String branch) {
-        if (branch.equals(_head)) {
+        if (branch.equals(_refs.head())) {
             System.out.println("No need to checkout the current branch.");
             throw new GitletException();
         }
-        if (!_branches.containsKey(branch)) {
+        if (!_refs.contains(branch)) {
             System.out.println("No such branch exists.");
             throw new GitletException();
         }
 
-        File commitFile = new File(".gitlet/commits/" + _branches.get(branch));
-        Commit commit = Utils.readObject(commitFile, Commit.class);
-        HashMap<String, Blob> files = commit.map();
-        checkUntracked(commit);
-        HashMap<String, Blob> copy = new HashMap<>();
+        Commit commit = readCommit(_refs.get(branch));
+        replaceTree(commit);
+        _refs.setHead(branch);
+    }
 
-        HashSet<String> keys = new HashSet<>(_snapshot.keySet());
-        for (String s : keys) {
-            if (files == null) {
-                Utils.restrictedDelete(new File(s));
-                rm(s);
-            } else {
-                if (!files.containsKey(s)) {
-                    Utils.restrictedDelete(new File(s));
-                    rm(s);
-                }
+    /** Replaces the tracked files in the working directory with those
+     *  of COMMIT and makes the index match it, after checking that no
+     *  untracked file is in the way.  One pass over COMMIT's tree both
+     *  checks for untracked files and finds the files to write: those
+     *  whose blob ids differ from their index entries or whose working
+     *  copies have changed since they were indexed.  Those files are
+     *  then written in parallel, and the index updated in memory, so
+     *  the cost follows the size of the difference rather than the
+     *  size of the tree.  Files to delete come from comparing the two
+     *  commits' trees, which skips the subtrees they share. */
+    private void replaceTree(Commit commit) {
+        HashMap<String, String> files = files(commit);
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<String> ids = new ArrayList<>();
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            String name = entry.getKey();
+            File file = new File(name);
+            if (!index().contains(name) && file.isFile()) {
+                Utils.message("There is an untracked file in "
+                        + "the way; delete it or add it first.");
+                throw new GitletException();
+            } else if (!entry.getValue().equals(
+                           index().cachedId(name, file))) {
+                names.add(name);
+                ids.add(entry.getValue());
             }
         }
-
-        if (files != null) {
-            for (Map.Entry entry : files.entrySet()) {
-                Blob blob = (Blob) entry.getValue();
-                String name = blob.name();
-                File newFile = new File(name);
-                Utils.writeContents(newFile, blob.string());
-                copy.put(name, blob);
+        for (Map.Entry<String, String> change
+                 : _trees.diff(headCommit().tree(), commit.tree()).entrySet()) {
+            if (change.getValue() == null) {
+                WorkingTree.delete(new File("."), change.getKey());
             }
         }
-
-        _snapshot.clear();
-        _snapshot.putAll(copy);
-        _pid = _branches.get(branch);
-        _head = branch;
-
-        File staging = new File(".gitlet/staging");
-        for (File file : staging.listFiles()) {
-            if (!file.isDirectory()) {
-                file.delete();
+        for (String name : new ArrayList<>(index().names())) {
+            if (!files.containsKey(name)) {
+                index().remove(name);
             }
         }
-        _staging.clear();
+        WorkingTree.write(new File("."), _blobs, names, ids);
+        for (int i = 0; i < names.size(); i += 1) {
+            index().put(names.get(i), ids.get(i), new File(names.get(i)));
+        }
+        index().setTree(_trees, commit.tree());
     }
 
     /** Checks for untracked files compared to COMMIT. */
     private void checkUntracked(Commit commit) {
-        HashMap<String, Blob> map = commit.map();
-        List<String> allFiles = Utils.plainFilenamesIn(
-                System.getProperty("user.dir"));
-        if (_snapshot == null) {
-            if (allFiles.size() > 0) {
-                Utils.message("There is an untracked file in "
-                        + "the way; delete it or add it first.");
-                throw new GitletException();
-            }
-        }
-        for (String s : allFiles) {
-            if (!_snapshot.containsKey(s) && map != null
-                    && map.containsKey(s)) {
+        for (String s : files(commit).keySet()) {
+            if (!index().contains(s) && new File(s).isFile()) {
                 Utils.message("There is an untracked file in "
                         + "the way; delete it or add it first.");
                 throw new GitletException();
@@ -379,298 +499,368 @@ public class Repo implements Serializable {
 
     /** Removes a BRANCH. */
     public void rmBranch(String branch) {
-        if (!_branches.keySet().contains(branch)) {
+        if (!_refs.contains(branch)) {
             Utils.message("A branch with that name does not exist.");
             throw new GitletException();
-        } else if (_head.equals(branch)) {
+        } else if (_refs.head().equals(branch)) {
             Utils.message("Cannot remove the current branch.");
             throw new GitletException();
         } else {
-            _branches.remove(branch);
+            _refs.remove(branch);
         }
     }
 
-    /** Resets to COMMITID. */
+    /** Resets to COMMITID, which may be abbreviated. */
     public void reset(String commitID) {
-        if (!new File(".gitlet/commits/" + commitID).exists()) {
+        Commit commit = readCommit(resolve(commitID));
+        if (commit == null) {
             System.out.println("No commit with that id exists.");
             throw new GitletException();
         }
 
-        File commitFile = new File(".gitlet/commits/" + commitID);
-        Commit commit = Utils.readObject(commitFile, Commit.class);
-        HashMap<String, Blob> files = commit.map();
-
-        checkUntracked(commit);
-
-        if (_snapshot != null) {
-            HashSet<String> keys = new HashSet<>(_snapshot.keySet());
-            for (String s : keys) {
-                if (files == null) {
-                    Utils.restrictedDelete(new File(s));
-                    rm(s);
-                } else if (!files.containsKey(s)) {
-                    Utils.restrictedDelete(new File(s));
-                    rm(s);
-                }
-            }
-        }
-
-        if (files != null) {
-            for (String s : files.keySet()) {
-                String branchName = _branches.get(_head);
-                ArrayList<String> operands = new ArrayList<>();
-                operands.add(branchName);
-                operands.add("--");
-                operands.add(s);
-                checkout(operands);
-                add(s);
-            }
-        }
-
-        if (_staging != null) {
-            _staging.clear();
-        }
-        _branches.put(_head, commitID);
-
+        replaceTree(commit);
+        _refs.put(_refs.head(), commit.id());
     }
 
     /** Creates a branch with NAME. */
     public void branch(String name) {
-        if (_branches.containsKey(name)) {
+        if (!Refs.isValid(name)) {
+            Utils.message("Invalid branch name.");
+            throw new GitletException();
+        } else if (_refs.contains(name)) {
             Utils.message("A branch with that name already exists.");
         } else {
-            _branches.put(name, _pid);
-            File commitFile = new File(".gitlet/commits/" + _pid);
-            Commit commit = Utils.readObject(commitFile, Commit.class);
-        }
-    }
-
-    /** Returns latest common ANCESTOR of BRANCH1 and BRANCH2. */
-    private Commit lca(String branch1, String branch2) {
-        ArrayList<String> branch1Commits = new ArrayList<String>();
-        ArrayList<String> branch2Commits = new ArrayList<String>();
-
-        String pid1 = _branches.get(branch1);
-        String pid2 = _branches.get(branch2);
-
-        while (pid1 != null) {
-            branch1Commits.add(pid1);
-            File commitFile = new File(".gitlet/commits/" + pid1);
-            Commit commit = Utils.readObject(commitFile, Commit.class);
-            pid1 = commit.pid();
-        }
-        while (pid2 != null) {
-            branch2Commits.add(pid2);
-            File commitFile = new File(".gitlet/commits/" + pid2);
-            Commit commit = Utils.readObject(commitFile, Commit.class);
-            pid2 = commit.pid();
+            _refs.put(name, headId());
         }
-        for (String s : branch1Commits) {
-            if (branch2Commits.contains(s)) {
-                File commitFile = new File(".gitlet/commits/" + s);
-                Commit commit = Utils.readObject(commitFile, Commit.class);
-                return commit;
-            }
-        }
-        return null;
     }
 
-    /** The merge function takes in GIVENBRANCH, good luck have fun. */
+    /** Merges the head of GIVENBRANCH into the current branch.  Only
+     *  the files the given branch changed since the split point need
+     *  deciding, and those are found by comparing trees.  After
+     *  criss-cross merges, which leave several latest common ancestors,
+     *  the split point is a virtual ancestor merged from them.  A file
+     *  the current branch left alone takes the given version; a file
+     *  both changed differently has its lines merged, several files at
+     *  a time, with conflict markers around the hunks they both
+     *  changed. */
     public void merge(String givenBranch) {
         mergeErrors(givenBranch);
-        String branchID = _branches.get(givenBranch);
-        File givenBranchHeadFile = new File(".gitlet/commits/" + branchID);
-        Commit givenHead = Utils.readObject(givenBranchHeadFile, Commit.class);
-        _split = lca(givenBranch, _head);
-        File currentBranchHeadFile = new File(".gitlet/commits/" + _pid);
-        Commit currentHead =
-                Utils.readObject(currentBranchHeadFile, Commit.class);
-        if (_split.id().equals
-                (_branches.get(givenBranch))) {
+        String branchID = _refs.get(givenBranch);
+        String headID = headId();
+        if (graph().isAncestor(branchID, headID)) {
             Utils.message(" Given branch is an"
                     + "ancestor of the current branch.");
             throw new GitletException();
-        } else if (_split.id().equals(_pid)) {
+        } else if (graph().isAncestor(headID, branchID)) {
             Utils.message("Current branch fast-forwarded.");
             throw new GitletException();
         }
+        Commit givenHead = readCommit(branchID);
+        List<String> splits = graph().mergeBases(branchID, headID);
+        Commit currentHead = headCommit();
 
         checkUntracked(givenHead);
 
-        _givenMod = checkMod(givenHead, _split);
-        _currentMod = checkMod(currentHead, _split);
-
-        mergeHelper(givenBranch);
+        TreeMap<String, String> given;
+        TreeMap<String, String> current;
+        HashMap<String, String> base;
+        if (splits.size() == 1) {
+            Commit split = readCommit(splits.get(0));
+            given = _trees.diff(split.tree(), givenHead.tree());
+            current = _trees.diff(split.tree(), currentHead.tree());
+            base = files(split);
+        } else {
+            base = virtualBase(splits);
+            given = TreeStore.diff(base, files(givenHead));
+            current = TreeStore.diff(base, files(currentHead));
+        }
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<String> ids = new ArrayList<>();
+        ArrayList<String> both = new ArrayList<>();
+        ArrayList<String[]> versions = new ArrayList<>();
+        for (Map.Entry<String, String> entry : given.entrySet()) {
+            String name = entry.getKey();
+            String id = entry.getValue();
+            if (!current.containsKey(name)) {
+                if (id == null) {
+                    index().remove(name);
+                    WorkingTree.delete(new File("."), name);
+                } else {
+                    names.add(name);
+                    ids.add(id);
+                }
+            } else if (!Objects.equals(current.get(name), id)) {
+                both.add(name);
+                versions.add(new String[] {
+                    base.get(name), current.get(name), id });
+            }
+        }
+        WorkingTree.write(new File("."), _blobs, names, ids);
+        for (int i = 0; i < names.size(); i += 1) {
+            index().put(names.get(i), ids.get(i), new File(names.get(i)));
+        }
+        if (mergeFiles(both, versions)) {
+            Utils.message("Encountered a merge conflict.");
+        }
+        commit("Merged " + givenBranch + " into " + _refs.head() + ".",
+               branchID);
+    }
 
-        HashMap<String, Blob> currentMap = currentHead.map();
-        HashMap<String, Blob> givenMap = givenHead.map();
-        for (String s : givenMap.keySet()) {
-            if (_split.map() == null || !_split.map().containsKey(s)) {
-                if (_currentMod.contains(s)) {
-                    if (_givenMod.contains(s)) {
-                        mergeConflict(givenBranch, s);
-                    }
+    /** Returns the files of a virtual common ancestor of the commits
+     *  IDS, the latest common ancestors of two branches after
+     *  criss-cross merges.  Each of them in turn is merged into the
+     *  first, against the latest common ancestors of the two, as git's
+     *  recursive strategy does.  Files that conflict keep their conflict
+     *  markers, so that a change either branch made to them conflicts
+     *  again rather than merging silently, while a file only one of the
+     *  ancestors changed is taken as it changed it. */
+    private HashMap<String, String> virtualBase(List<String> ids) {
+        HashMap<String, String> result = files(readCommit(ids.get(0)));
+        for (int i = 1; i < ids.size(); i += 1) {
+            List<String> splits = graph().mergeBases(ids.get(0), ids.get(i));
+            HashMap<String, String> base;
+            if (splits.isEmpty()) {
+                base = new HashMap<>();
+            } else if (splits.size() == 1) {
+                base = files(readCommit(splits.get(0)));
+            } else {
+                base = virtualBase(splits);
+            }
+            HashMap<String, String> other = files(readCommit(ids.get(i)));
+            HashMap<String, String> merged = new HashMap<>();
+            TreeSet<String> names = new TreeSet<>(result.keySet());
+            names.addAll(other.keySet());
+            for (String name : names) {
+                String[] version = {
+                    base.get(name), result.get(name), other.get(name) };
+                String id;
+                if (Objects.equals(version[1], version[2])
+                    || Objects.equals(version[0], version[2])) {
+                    id = version[1];
+                } else if (Objects.equals(version[0], version[1])) {
+                    id = version[2];
                 } else {
-                    String branchName = _branches.get(givenBranch);
-                    ArrayList<String> operands = new ArrayList<>();
-                    operands.add(branchName);
-                    operands.add("--");
-                    operands.add(s);
-                    checkout(operands);
-                    add(s);
+                    id = WorkingTree.mergeBlob(_blobs, version);
                 }
-            } else if (!currentMap.containsKey(s)) {
-                if (!givenMap.get(s).id().equals
-                        (_split.map().get(s).id())) {
-                    String branchName = _branches.get(givenBranch);
-                    ArrayList<String> operands = new ArrayList<>();
-                    operands.add(branchName);
-                    operands.add("--");
-                    operands.add(s);
-                    checkout(operands);
-                    add(s);
+                if (id != null) {
+                    merged.put(name, id);
                 }
             }
+            result = merged;
         }
-        commit("Merged " + givenBranch + " into " + _head + ".");
-    }
-
-    /** Helper, takes in BRANCH. */
-    private void mergeHelper(String branch) {
-        String branchID = _branches.get(branch);
-        File givenBranchHeadFile = new File(".gitlet/commits/" + branchID);
-        Commit givenHead =
-                Utils.readObject(givenBranchHeadFile, Commit.class);
-        File currentBranchHeadFile = new File(".gitlet/commits/" + _pid);
-        Commit currentHead =
-                Utils.readObject(currentBranchHeadFile, Commit.class);
-
-        HashMap<String, Blob> splitFiles = _split.map();
-        HashMap<String, Blob> givenMap = givenHead.map();
-        HashMap<String, Blob> currentMap = currentHead.map();
-
-
-        if (splitFiles != null) {
-            for (String s : splitFiles.keySet()) {
-                if (!currentHead.map().containsKey(s)
-                        && !givenHead.map().containsKey(s)) {
-                    Utils.restrictedDelete(new File(s));
-                    rm(s);
-                } else if (_currentMod.contains(s) && _givenMod.contains(s)) {
-                    if (!givenMap.get(s).id().equals(currentMap.get(s).id())) {
-                        mergeConflict(branch, s);
-                    }
-                } else if (_givenMod.contains(s)) {
-                    String branchName = _branches.get(branch);
-                    ArrayList<String> operands = new ArrayList<>();
-                    operands.add(branchName);
-                    operands.add("--");
-                    operands.add(s);
-                    checkout(operands);
-                    add(s);
-                } else if (!givenMap.containsKey(s)
-                        && !_currentMod.contains(s)) {
-                    _snapshot.remove(s);
-                    Utils.restrictedDelete(new File(s));
+        return result;
+    }
+
+    /** Merges the lines of the files NAMES, whose split point, current
+     *  and given versions are VERSIONS, and stages the results.
+     *  Returns true iff any of them conflict. */
+    private boolean mergeFiles(List<String> names, List<String[]> versions) {
+        String[] ids = new String[names.size()];
+        boolean conflict = WorkingTree.merge(new File("."), _blobs, names,
+                                             versions, ids);
+        for (int i = 0; i < ids.length; i += 1) {
+            index().put(names.get(i), ids[i], new File(names.get(i)));
+        }
+        return conflict;
+    }
+
+    /** Checks for errors in the merge command. Takes in BRANCH.  Writes
+     *  nothing, so that a refused merge leaves no trace. */
+    private void mergeErrors(String branch) {
+        HashMap<String, String> tracked = files(headCommit());
+        if (!index().staged(tracked).isEmpty()
+            || !index().removed(tracked).isEmpty()) {
+            Utils.message("You have uncommitted changes.");
+            throw new GitletException();
+        } else if (!_refs.contains(branch)) {
+            Utils.message("A branch with that name does not exist.");
+            throw new GitletException();
+        } else if (_refs.head().equals(branch)) {
+            Utils.message("Cannot merge a branch with itself.");
+            throw new GitletException();
+        }
+    }
+
+    /** Packs the loose objects into packfiles, or all objects if ALL.
+     *  The versions of each file are gathered from the commits being
+     *  packed, oldest first, so that each can be stored as a delta
+     *  against the version before it.  Only the files each commit
+     *  changed from its parent are looked at, and when only the loose
+     *  objects are packed, the version each file had in the parent is
+     *  put first, as the base of the first new version if it is loose
+     *  too. */
+    public void gc(boolean all) {
+        ArrayList<Commit> commits = new ArrayList<>();
+        for (String id : all ? _commits.ids() : _commits.looseIds()) {
+            commits.add(readCommit(id));
+        }
+        commits.sort(Comparator.comparingLong(Commit::time));
+        HashMap<String, List<String>> versions = new HashMap<>();
+        for (Commit commit : commits) {
+            Commit parent = readCommit(commit.pid());
+            String from = parent == null ? null : parent.tree();
+            Map<String, String> before = all
+                ? Map.of() : _trees.diff(commit.tree(), from);
+            for (Map.Entry<String, String> entry
+                     : _trees.diff(from, commit.tree()).entrySet()) {
+                if (entry.getValue() == null) {
+                    continue;
                 }
+                List<String> chain = versions.computeIfAbsent(
+                    entry.getKey(), k -> new ArrayList<>());
+                String base = before.get(entry.getKey());
+                if (chain.isEmpty() && base != null) {
+                    chain.add(base);
+                }
+                chain.add(entry.getValue());
             }
         }
+        _blobs.repack(versions.values(), all);
+        _commits.repack(new ArrayList<>(), all);
+        _trees.repack(all);
     }
 
-    /** Handles merge conflicts, takes in BRANCH, FILENAME. */
-    private void mergeConflict(String branch, String fileName) {
-        String branchID = _branches.get(branch);
-        File givenBranchHeadFile = new File(".gitlet/commits/" + branchID);
-        Commit givenHead =
-                Utils.readObject(givenBranchHeadFile, Commit.class);
-        File currentBranchHeadFile = new File(".gitlet/commits/" + _pid);
-        Commit currentHead =
-                Utils.readObject(currentBranchHeadFile, Commit.class);
-        HashMap<String, Blob> currentMap = currentHead.map();
-        HashMap<String, Blob> givenMap = givenHead.map();
-
-        Blob c;
-        String currentContents;
-        if (currentMap.containsKey(fileName)) {
-            c = currentMap.get(fileName);
-            currentContents = c.string();
-        } else {
-            c = null;
-            currentContents = "";
+    /** Rewrites objects and state that older versions of gitlet stored
+     *  in formats this version no longer reads.  Nothing those versions
+     *  read is changed until every object is converted and every
+     *  commit checked: converted objects are written to new files, and
+     *  save deletes the old ones, and records the new format, through
+     *  its journal.  So a migration that fails leaves a repository the
+     *  older version can still use, and can be run again. */
+    public void migrate() {
+        boolean header = _config.getInt(Config.FORMAT_KEY, 0)
+            >= Config.HEADER_FORMAT;
+        Legacy old = Legacy.read(GITLET);
+        _blobs.create();
+        _blobs.copyLegacy(header);
+        _trees.create();
+        _trees.copyLegacy();
+        int converted = 0;
+        HashSet<String> checked = new HashSet<>();
+        TreeSet<String> legacy = new TreeSet<>(_commits.legacyIds());
+        TreeSet<String> ids = new TreeSet<>(_commits.ids());
+        ids.addAll(legacy);
+        for (String id : ids) {
+            byte[] bytes = legacy.contains(id)
+                ? _commits.getLegacy(id, header) : _commits.get(id);
+            Commit commit = Commit.isLegacy(bytes)
+                ? Legacy.commit(bytes, _blobs) : Commit.decode(bytes);
+            if (commit.tree() == null) {
+                TreeMap<String, String> flat =
+                    new TreeMap<>(commit.flatMap());
+                commit = commit.withTree(
+                    _trees.write(flat, v -> v, new HashMap<>()));
+                _commits.replace(id, commit.encode());
+                converted += 1;
+            } else if (legacy.contains(id)) {
+                _commits.put(id, bytes);
+            }
+            String missing = _trees.missing(commit.tree(), _blobs, checked);
+            if (missing != null) {
+                Utils.message("Commit %s lacks object %s; the repository "
+                              + "was left in its old format.", id, missing);
+                throw new GitletException();
+            }
         }
+        if (old != null) {
+            migrateState(old, ids);
+        }
+        _config.set(Config.FORMAT_KEY, Integer.toString(Config.FORMAT));
+        _migrated = true;
+        try {
+            index();
+        } catch (GitletException | IllegalArgumentException excp) {
+            _index = new Index();
+            HashMap<String, String> tree = files(headCommit());
+            for (Map.Entry<String, String> entry : tree.entrySet()) {
+                _index.put(entry.getKey(), entry.getValue());
+            }
+        }
+        Utils.message("Converted %d commits.", converted);
+    }
 
-        Blob g;
-        String givenContents;
-        if (givenMap.containsKey(fileName)) {
-            g = givenMap.get(fileName);
-            givenContents = g.string();
-        } else {
-            g = null;
-            givenContents = "";
-        }
-
-        String contents = "<<<<<<< HEAD\n";
-        contents += currentContents;
-        contents += "=======\n" + givenContents;
-        contents += ">>>>>>>\n";
-        Utils.writeContents(new File(fileName), contents);
-        add(fileName);
-        Utils.message("Encountered a merge conflict.");
-    }
-
-    /** Checks for modified files compared to a commit.
-     * Takes in CURRENT, COMPARETO. Returns MODIFIED */
-    private ArrayList<String> checkMod(Commit current, Commit compareTo) {
-        List<String> allFiles = Utils.plainFilenamesIn(
-                System.getProperty("user.dir"));
-        ArrayList<String> modified = new ArrayList<>();
-        if (allFiles != null && !allFiles.isEmpty()) {
-            for (String s : allFiles) {
-                HashMap<String, Blob> thisMap = current.map();
-                HashMap<String, Blob> thatMap = compareTo.map();
-                if (thisMap != null && thatMap != null) {
-                    if (thisMap.containsKey(s)
-                            && thatMap.containsKey(s)) {
-                        Blob thisBlob = thisMap.get(s);
-                        Blob thatBlob = thatMap.get(s);
-                        if (!thisBlob.id().equals(thatBlob.id())) {
-                            modified.add(s);
-                        }
-                    }
-                }
+    /** Takes the branches, the current branch and the staging area from
+     *  OLD, the state of a repository of the first version of gitlet
+     *  whose commits have ids IDS. */
+    private void migrateState(Legacy old, Set<String> ids) {
+        for (String id : old.branches().values()) {
+            if (!ids.contains(id)) {
+                Utils.message("Missing commit %s; the repository was left "
+                              + "in its old format.", id);
+                throw new GitletException();
+            }
+        }
+        for (String name : old.branches().keySet()) {
+            if (!Refs.isValid(name)) {
+                Utils.message("Invalid branch name %s; the repository was "
+                              + "left in its old format.", name);
+                throw new GitletException();
             }
         }
-        return modified;
+        if (!old.branches().containsKey(old.head())) {
+            Utils.message("Missing branch %s; the repository was left "
+                          + "in its old format.", old.head());
+            throw new GitletException();
+        }
+        _refs.init(old.head(), old.branches().get(old.head()));
+        old.branches().forEach(_refs::put);
+        _index = new Index();
+        files(headCommit()).forEach(_index::put);
+        old.staged(_blobs).forEach(_index::put);
+        old.removed().forEach(_index::remove);
     }
 
-    /** Checks for errors in the merge command. Takes in BRANCH. */
-    private void mergeErrors(String branch) {
-        if (!_staging.isEmpty()) {
-            Utils.message("You have uncommitted changes.");
+    /** Exits with an error unless the repository's objects are in the
+     *  format this version of gitlet reads. */
+    public void checkFormat() {
+        if (_config.getInt(Config.FORMAT_KEY, 0) < Config.FORMAT) {
+            Utils.message("Repository format is out of date; "
+                          + "run gitlet migrate.");
             throw new GitletException();
-        } else if (!_branches.containsKey(branch)) {
-            Utils.message("A branch with that name does not exist.");
+        }
+    }
+
+    /** Prints the value of setting KEY, if it is set. */
+    public void config(String key) {
+        String value = _config.get(key);
+        if (value != null) {
+            System.out.println(value);
+        }
+    }
+
+    /** Sets setting KEY to VALUE. */
+    public void config(String key, String value) {
+        if (key.equals(Config.COMPRESSION_KEY)
+            && !value.matches("[0-9]")) {
+            Utils.message("Compression level must be between 0 and 9.");
             throw new GitletException();
-        } else if (_head.equals(branch)) {
-            Utils.message("Cannot merge a branch with itself.");
+        } else if (key.equals(Config.CHECKPOINT_KEY)
+                   && !value.matches("[0-9]+")) {
+            Utils.message("Checkpoint must be a number of commands.");
+            throw new GitletException();
+        } else if (key.equals(Config.FORMAT_KEY)) {
+            Utils.message("Use migrate to change the repository format.");
             throw new GitletException();
         }
+        _config.set(key, value);
     }
 
-    /** Returns commit map. */
-    public HashMap<String, Commit> commitHashMap() {
-        return _commits;
+    /** Returns the number of commands a batch runs between saves, or 0
+     *  if it saves only at the end. */
+    public int checkpoint() {
+        return _config.checkpoint();
     }
 
-    /** Returns the branches. */
-    public HashMap<String, String> branches() {
-        return _branches;
+    /** Returns true iff a command changed the settings since this Repo
+     *  was opened or last saved, so that parts of it opened with the old
+     *  ones are out of date. */
+    public boolean settingsChanged() {
+        return _config.changed();
     }
 
-    /** Returns head pointer. */
+    /** Returns the name of the current branch. */
     public String head() {
-        return _head;
+        return _refs.head();
     }
 
 }
@@ -0,0 +1,145 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The contents of one directory in a commit: each file's blob id and
+ *  each subdirectory's tree id, by name.
+ *
+ *  A tree is encoded as a header and its entries in name order, each a
+ *  type byte, the name and the raw 20-byte id, and its id is the SHA-1
+ *  of that encoding.  So two directories with the same contents have
+ *  the same tree, and a commit that changes one file shares every tree
+ *  not on that file's path with its parent.
+ *  @author Kevin Ren
+ */
+class Tree {
+
+    /** Magic number at the start of an encoded tree. */
+    private static final int MAGIC = 0x474c5452;
+    /** Version of the tree encoding. */
+    private static final int VERSION = 1;
+    /** Type byte of an entry naming a file. */
+    private static final int BLOB = 0;
+    /** Type byte of an entry naming a subdirectory. */
+    private static final int TREE = 1;
+
+    /** One entry of a tree. */
+    static class Entry {
+        /** An entry with object id ID, which names a tree iff ISTREE. */
+        Entry(String id, boolean isTree) {
+            _id = id;
+            _isTree = isTree;
+        }
+
+        /** Returns the id of the blob or tree. */
+        String id() {
+            return _id;
+        }
+
+        /** Returns true iff this entry is a subdirectory. */
+        boolean isTree() {
+            return _isTree;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Entry && ((Entry) obj)._id.equals(_id)
+                && ((Entry) obj)._isTree == _isTree;
+        }
+
+        @Override
+        public int hashCode() {
+            return _id.hashCode();
+        }
+
+        /** Blob or tree id. */
+        private final String _id;
+        /** True iff this entry is a subdirectory. */
+        private final boolean _isTree;
+    }
+
+    /** An empty tree. */
+    Tree() {
+        _entries = new TreeMap<>();
+    }
+
+    /** Adds a file NAME with blob id ID. */
+    void putBlob(String name, String id) {
+        _entries.put(name, new Entry(id, false));
+        _id = null;
+    }
+
+    /** Adds a subdirectory NAME with tree id ID. */
+    void putTree(String name, String id) {
+        _entries.put(name, new Entry(id, true));
+        _id = null;
+    }
+
+    /** Returns the entries, in name order. */
+    Map<String, Entry> entries() {
+        return Collections.unmodifiableMap(_entries);
+    }
+
+    /** Returns the id of this tree. */
+    String id() {
+        if (_id == null) {
+            _id = Utils.sha1(encode());
+        }
+        return _id;
+    }
+
+    /** Returns the encoding of this tree. */
+    byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                out.writeByte(e.getValue()._isTree ? TREE : BLOB);
+                out.writeUTF(e.getKey());
+                out.write(Utils.fromHex(e.getValue()._id));
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(
+                "Internal error encoding tree.");
+        }
+    }
+
+    /** Returns the tree encoded in BYTES. */
+    static Tree decode(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(
+                 new ByteArrayInputStream(bytes))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Utils.message("Unrecognized tree format.");
+                throw new GitletException();
+            }
+            Tree tree = new Tree();
+            byte[] id = new byte[Utils.UID_LENGTH / 2];
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                boolean isTree = in.readByte() == TREE;
+                String name = in.readUTF();
+                in.readFully(id);
+                tree._entries.put(name, new Entry(Utils.toHex(id), isTree));
+            }
+            return tree;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Entries by name. */
+    private final TreeMap<String, Entry> _entries;
+    /** Id of this tree, or null if not yet computed. */
+    private String _id;
+}
@@ -0,0 +1,269 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/** The store of Tree objects, with the operations that work on whole
+ *  snapshots: building the trees of a set of files, listing the files
+ *  of a tree, and comparing two trees.
+ *
+ *  Paths of files below the top directory are written with '/'
+ *  between their components.  A directory is named by its path with a
+ *  trailing '/', and the top directory by the empty string.
+ *  @author Kevin Ren
+ */
+class TreeStore {
+
+    /** Number of decoded trees kept in memory. */
+    private static final int CACHE_SIZE = 1024;
+    /** Number of file listings of whole snapshots kept in memory. */
+    private static final int FILES_CACHE_SIZE = 8;
+
+    /** A tree store keeping its trees in STORE. */
+    TreeStore(ObjectStore store) {
+        _store = store;
+        _trees = new LruCache<>(CACHE_SIZE);
+        _files = new LruCache<>(FILES_CACHE_SIZE);
+    }
+
+    /** Returns the files of the trees written since the last call,
+     *  which have not yet been forced to disk. */
+    List<File> unsynced() {
+        return _store.unsynced();
+    }
+
+    /** Creates the directory holding the trees, with the empty tree in
+     *  it. */
+    void create() {
+        _store.create();
+        put(new Tree());
+    }
+
+    /** Returns the tree with id ID. */
+    Tree get(String id) {
+        Tree tree = _trees.get(id);
+        if (tree == null) {
+            tree = Tree.decode(_store.get(id));
+            _trees.put(id, tree);
+        }
+        return tree;
+    }
+
+    /** Stores TREE and returns its id. */
+    String put(Tree tree) {
+        String id = tree.id();
+        _store.put(id, tree.encode());
+        _trees.put(id, tree);
+        return id;
+    }
+
+    /** Stores the trees of the snapshot FILES, which maps paths to
+     *  values whose blob ids are given by IDOF, and returns the id of
+     *  the top tree.  CACHE maps directories to the ids of trees known
+     *  to hold exactly the files of FILES below them; such directories
+     *  are not looked into, and CACHE gets the ids of the trees this
+     *  stores.  So with an up-to-date CACHE only the directories on the
+     *  paths of changed files are visited.  Fails, reporting the path,
+     *  if FILES holds both a file and files below it. */
+    <V> String write(NavigableMap<String, V> files, Function<V, String> idOf,
+                     Map<String, String> cache) {
+        return write(files, idOf, cache, "");
+    }
+
+    /** Stores the tree of directory DIR as described for write(FILES,
+     *  IDOF, CACHE), and returns its id. */
+    private <V> String write(NavigableMap<String, V> files,
+                             Function<V, String> idOf,
+                             Map<String, String> cache, String dir) {
+        String cached = cache.get(dir);
+        if (cached != null) {
+            return cached;
+        }
+        Tree tree = new Tree();
+        String path = files.ceilingKey(dir);
+        while (path != null && path.startsWith(dir)) {
+            String rest = path.substring(dir.length());
+            int slash = rest.indexOf('/');
+            String name = slash < 0 ? rest : rest.substring(0, slash);
+            if (tree.entries().containsKey(name)) {
+                Utils.message("%s%s is both a file and a directory.",
+                              dir, name);
+                throw new GitletException();
+            } else if (slash < 0) {
+                tree.putBlob(name, idOf.apply(files.get(path)));
+                path = files.higherKey(path);
+            } else {
+                String sub = dir + name + "/";
+                tree.putTree(name, write(files, idOf, cache, sub));
+                path = files.ceilingKey(sub + Character.MAX_VALUE);
+            }
+        }
+        String id = put(tree);
+        cache.put(dir, id);
+        return id;
+    }
+
+    /** Returns the snapshot whose top tree is ROOT, mapping the path of
+     *  each file to its blob id.  Recent results are cached, so the
+     *  result is shared and must not be modified. */
+    HashMap<String, String> files(String root) {
+        HashMap<String, String> files = _files.get(root);
+        if (files == null) {
+            files = new HashMap<>();
+            addFiles(root, "", files);
+            _files.put(root, files);
+        }
+        return files;
+    }
+
+    /** Adds the files of tree ID, which is directory DIR, to FILES. */
+    private void addFiles(String id, String dir,
+                          Map<String, String> files) {
+        for (Map.Entry<String, Tree.Entry> e : get(id).entries().entrySet()) {
+            if (e.getValue().isTree()) {
+                addFiles(e.getValue().id(), dir + e.getKey() + "/", files);
+            } else {
+                files.put(dir + e.getKey(), e.getValue().id());
+            }
+        }
+    }
+
+    /** Adds the directories of tree ROOT to DIRS, mapped to their tree
+     *  ids. */
+    void directories(String root, Map<String, String> dirs) {
+        addDirectories(root, "", dirs);
+    }
+
+    /** Adds tree ID, which is directory DIR, and its subdirectories to
+     *  DIRS. */
+    private void addDirectories(String id, String dir,
+                                Map<String, String> dirs) {
+        dirs.put(dir, id);
+        for (Map.Entry<String, Tree.Entry> e : get(id).entries().entrySet()) {
+            if (e.getValue().isTree()) {
+                addDirectories(e.getValue().id(), dir + e.getKey() + "/",
+                               dirs);
+            }
+        }
+    }
+
+    /** Returns the paths of the files that differ between the snapshots
+     *  with top trees FROM and TO, either of which may be null for an
+     *  empty snapshot.  Each path maps to its blob id in TO, or null if
+     *  TO lacks it.  Subtrees with the same id in both are skipped
+     *  without being read. */
+    TreeMap<String, String> diff(String from, String to) {
+        TreeMap<String, String> changes = new TreeMap<>();
+        diff(from, to, "", changes);
+        return changes;
+    }
+
+    /** Returns the paths of the files that differ between the snapshots
+     *  whose files, mapped to their blob ids, are FROM and TO, as for
+     *  diff of two trees. */
+    static TreeMap<String, String> diff(Map<String, String> from,
+                                        Map<String, String> to) {
+        TreeMap<String, String> changes = new TreeMap<>();
+        for (Map.Entry<String, String> entry : to.entrySet()) {
+            if (!entry.getValue().equals(from.get(entry.getKey()))) {
+                changes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String name : from.keySet()) {
+            if (!to.containsKey(name)) {
+                changes.put(name, null);
+            }
+        }
+        return changes;
+    }
+
+    /** Adds to CHANGES the differences between trees FROM and TO, which
+     *  are directory DIR. */
+    private void diff(String from, String to, String dir,
+                      Map<String, String> changes) {
+        if (from == null ? to == null : from.equals(to)) {
+            return;
+        }
+        Map<String, Tree.Entry> a = entries(from);
+        Map<String, Tree.Entry> b = entries(to);
+        TreeSet<String> names = new TreeSet<>(a.keySet());
+        names.addAll(b.keySet());
+        for (String name : names) {
+            Tree.Entry x = a.get(name);
+            Tree.Entry y = b.get(name);
+            if (x != null && x.equals(y)) {
+                continue;
+            }
+            String path = dir + name;
+            String xTree = x != null && x.isTree() ? x.id() : null;
+            String yTree = y != null && y.isTree() ? y.id() : null;
+            diff(xTree, yTree, path + "/", changes);
+            if (y != null && !y.isTree()) {
+                changes.put(path, y.id());
+            } else if (x != null && !x.isTree()) {
+                changes.put(path, null);
+            }
+        }
+    }
+
+    /** Returns the entries of tree ID, or none if ID is null. */
+    private Map<String, Tree.Entry> entries(String id) {
+        return id == null ? Collections.emptyMap() : get(id).entries();
+    }
+
+    /** Returns the id of a tree or blob, reachable from tree ROOT, that
+     *  is missing from this store or from BLOBS, or null if there is
+     *  none.  Trees in CHECKED, which gets each tree found complete,
+     *  are not looked into. */
+    String missing(String root, ObjectStore blobs, Set<String> checked) {
+        if (checked.contains(root)) {
+            return null;
+        } else if (!_store.contains(root)) {
+            return root;
+        }
+        for (Tree.Entry entry : get(root).entries().values()) {
+            String missing = entry.isTree()
+                ? missing(entry.id(), blobs, checked)
+                : blobs.contains(entry.id()) ? null : entry.id();
+            if (missing != null) {
+                return missing;
+            }
+        }
+        checked.add(root);
+        return null;
+    }
+
+    /** Writes the trees that older versions of gitlet stored directly
+     *  in the store's directory into their subdirectories, leaving the
+     *  old files in place. */
+    void copyLegacy() {
+        _store.copyLegacy(true);
+    }
+
+    /** Stages in JOURNAL the deletion of the files of the trees that
+     *  older versions of gitlet stored directly in the store's
+     *  directory. */
+    void dropLegacy(Journal journal) {
+        _store.dropLegacy(journal);
+    }
+
+    /** Moves the loose trees, or all trees if ALL, into packs. */
+    void repack(boolean all) {
+        _store.repack(List.of(), all);
+    }
+
+    /** Store holding the encoded trees. */
+    private final ObjectStore _store;
+    /** Recently read trees, by id. */
+    private final LruCache<String, Tree> _trees;
+    /** Recently listed snapshots, by top tree id. */
+    private final LruCache<String, HashMap<String, String>> _files;
+}
@@ -0,0 +1,295 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+/** Compares the working directory with the index in a single pass.
+ *  Files whose stat data match their index entries are taken as
+ *  unchanged; the rest are hashed in parallel on a fork-join pool.
+ *  Adding hashes and stores files in parallel on the same pool,
+ *  checking out writes files in parallel there, and merging merges the
+ *  contents of files in parallel there too.
+ *
+ *  Files in subdirectories are named by their paths from the working
+ *  directory, with '/' between components, as in the index.
+ *  @author Kevin Ren
+ */
+class WorkingTree {
+
+    /** Name of the repository directory, which is never examined. */
+    private static final String GITLET = ".gitlet";
+
+    /** Compares the files in directory DIR with INDEX. */
+    WorkingTree(File dir, Index index) {
+        _modified = new TreeMap<>();
+        _untracked = new TreeSet<>();
+        List<String> names = files(dir);
+        List<String> unsure = new ArrayList<>();
+        TreeSet<String> present = new TreeSet<>();
+        for (String name : names) {
+            if (!index.contains(name)) {
+                _untracked.add(name);
+            } else {
+                present.add(name);
+                if (index.cachedId(name, Utils.join(dir, name)) == null) {
+                    unsure.add(name);
+                }
+            }
+        }
+        String[] ids = new String[unsure.size()];
+        IntStream.range(0, ids.length).parallel().forEach(i -> {
+            File file = Utils.join(dir, unsure.get(i));
+            ids[i] = new Blob(file.getPath()).id();
+        });
+        for (int i = 0; i < ids.length; i += 1) {
+            if (!ids[i].equals(index.get(unsure.get(i)).id())) {
+                _modified.put(unsure.get(i), "modified");
+            }
+        }
+        for (String name : index.names()) {
+            if (!present.contains(name)) {
+                _modified.put(name, "deleted");
+            }
+        }
+    }
+
+    /** Returns tracked files whose working copies differ from the
+     *  index, mapped to "modified" or "deleted", in lexicographic
+     *  order. */
+    TreeMap<String, String> modified() {
+        return _modified;
+    }
+
+    /** Returns files in the working directory that the index does not
+     *  track, in lexicographic order. */
+    TreeSet<String> untracked() {
+        return _untracked;
+    }
+
+    /** Returns the paths of the files in directory DIR and its
+     *  subdirectories, other than the repository's own, in
+     *  lexicographic order. */
+    static List<String> files(File dir) {
+        ArrayList<String> files = new ArrayList<>();
+        addFiles(dir, "", files);
+        files.sort(null);
+        return files;
+    }
+
+    /** Adds to FILES the paths of the files in directory DIR, whose
+     *  path is PREFIX, and its subdirectories. */
+    private static void addFiles(File dir, String prefix,
+                                 List<String> files) {
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            File file = new File(dir, name);
+            if (file.isFile()) {
+                files.add(prefix + name);
+            } else if (file.isDirectory() && !name.equals(GITLET)) {
+                addFiles(file, prefix + name + "/", files);
+            }
+        }
+    }
+
+    /** Returns the paths of the files in directory DIR named by
+     *  OPERANDS, in lexicographic order, or null if some operand names
+     *  nothing.  Each operand is the path of a file, the path of a
+     *  directory, standing for all the files in it and its
+     *  subdirectories, or a glob pattern as understood by
+     *  FileSystem.getPathMatcher, matched against the paths of all the
+     *  files in DIR.  Nothing in the repository directory is named. */
+    static TreeSet<String> expand(File dir, List<String> operands) {
+        TreeSet<String> names = new TreeSet<>();
+        List<String> all = null;
+        for (String operand : operands) {
+            String name = path(operand);
+            File file = Utils.join(dir, name);
+            if (name.equals(GITLET) || name.startsWith(GITLET + "/")) {
+                return null;
+            } else if (file.isFile()) {
+                names.add(name);
+            } else if (file.isDirectory()) {
+                ArrayList<String> files = new ArrayList<>();
+                addFiles(file, name.isEmpty() ? "" : name + "/", files);
+                names.addAll(files);
+            } else if (isGlob(operand)) {
+                if (all == null) {
+                    all = files(dir);
+                }
+                PathMatcher matcher =
+                    FileSystems.getDefault().getPathMatcher("glob:" + name);
+                boolean matched = false;
+                for (String path : all) {
+                    if (matcher.matches(Paths.get(path))) {
+                        names.add(path);
+                        matched = true;
+                    }
+                }
+                if (!matched) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+        }
+        return names;
+    }
+
+    /** Returns true iff OPERAND contains any of the characters special
+     *  in a glob pattern. */
+    private static boolean isGlob(String operand) {
+        return operand.chars().anyMatch(c -> "*?[{".indexOf(c) >= 0);
+    }
+
+    /** Returns NAME, a path relative to the working directory, in the
+     *  form used by the index: normalized, with '/' between
+     *  components.  Fails if NAME is absolute or leads out of the
+     *  working directory. */
+    static String path(String name) {
+        Path normal = Paths.get(name).normalize();
+        if (normal.isAbsolute() || normal.getRoot() != null
+            || normal.startsWith("..")) {
+            Utils.message("Path is outside the working directory.");
+            throw new GitletException();
+        }
+        return normal.toString().replace(File.separatorChar, '/');
+    }
+
+    /** Deletes the file NAME in directory DIR, if it exists, and then
+     *  any directories above it that are left empty. */
+    static void delete(File dir, String name) {
+        File file = Utils.join(dir, name);
+        if (!file.isFile() || !file.delete()) {
+            return;
+        }
+        for (int i = name.lastIndexOf('/'); i > 0;
+             i = name.lastIndexOf('/', i - 1)) {
+            if (!Utils.join(dir, name.substring(0, i)).delete()) {
+                break;
+            }
+        }
+    }
+
+    /** Stores in STORE, several at a time, the contents of the files in
+     *  directory DIR named NAMES, and returns their blob ids. */
+    static String[] add(File dir, ObjectStore store, List<String> names) {
+        String[] ids = new String[names.size()];
+        IntStream.range(0, ids.length).parallel().forEach(i -> {
+            File file = Utils.join(dir, names.get(i));
+            ids[i] = store.putFile(file);
+        });
+        return ids;
+    }
+
+    /** Writes the contents of the objects in STORE with ids IDS to the
+     *  files in directory DIR named NAMES, several at a time. */
+    static void write(File dir, ObjectStore store, List<String> names,
+                      List<String> ids) {
+        IntStream.range(0, names.size()).parallel().forEach(
+            i -> store.copyTo(ids.get(i), Utils.join(dir, names.get(i))));
+    }
+
+    /** Merges, several at a time, the versions in STORE of the files in
+     *  directory DIR named NAMES.  VERSIONS holds for each file the blob
+     *  ids of its versions in the common ancestor, the current branch
+     *  and the given branch, any of which is null where the file is
+     *  absent.  Each merged file is written, stored in STORE, and its
+     *  blob id put in IDS.  Returns true iff any file had conflicts. */
+    static boolean merge(File dir, ObjectStore store, List<String> names,
+                         List<String[]> versions, String[] ids) {
+        boolean[] conflicts = new boolean[names.size()];
+        IntStream.range(0, names.size()).parallel().forEach(i -> {
+            File file = Utils.join(dir, names.get(i));
+            conflicts[i] = mergeFile(file, store, versions.get(i));
+            ids[i] = store.putFile(file);
+        });
+        for (boolean conflict : conflicts) {
+            if (conflict) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Merges the versions in STORE given by VERSION, as for merge,
+     *  into FILE.  Returns true iff they conflict. */
+    private static boolean mergeFile(File file, ObjectStore store,
+                                     String[] version) {
+        boolean[] conflict = new boolean[1];
+        String result = merged(store, version, conflict);
+        try {
+            Files.createDirectories(
+                file.getAbsoluteFile().getParentFile().toPath());
+            Files.write(file.toPath(),
+                        result.getBytes(StandardCharsets.ISO_8859_1));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return conflict[0];
+    }
+
+    /** Stores in STORE the merge of the versions in it given by VERSION,
+     *  as for merge, conflict markers and all, and returns its blob
+     *  id. */
+    static String mergeBlob(ObjectStore store, String[] version) {
+        byte[] contents = merged(store, version, new boolean[1])
+            .getBytes(StandardCharsets.ISO_8859_1);
+        String id = Blob.id(contents);
+        store.put(id, contents);
+        return id;
+    }
+
+    /** Returns the merge of the versions in STORE given by VERSION, as
+     *  for merge, one char per byte, and sets CONFLICT[0] iff they
+     *  conflict.  A file that one side deleted, or that is not text,
+     *  conflicts as a whole. */
+    private static String merged(ObjectStore store, String[] version,
+                                 boolean[] conflict) {
+        String base = text(store, version[0]);
+        String ours = text(store, version[1]);
+        String theirs = text(store, version[2]);
+        if (version[1] == null || version[2] == null
+            || isBinary(base) || isBinary(ours) || isBinary(theirs)) {
+            conflict[0] = true;
+            return Diff3.conflict(ours, theirs);
+        }
+        Diff3 merged = new Diff3(base, ours, theirs);
+        conflict[0] = merged.conflicted();
+        return merged.result();
+    }
+
+    /** Returns the contents of object ID in STORE as one char per byte,
+     *  so that they are written back unchanged whatever their encoding,
+     *  or the empty string if ID is null. */
+    private static String text(ObjectStore store, String id) {
+        if (id == null) {
+            return "";
+        }
+        return new String(store.get(id), StandardCharsets.ISO_8859_1);
+    }
+
+    /** Returns true iff TEXT looks like the contents of a binary
+     *  file rather than lines of text. */
+    private static boolean isBinary(String text) {
+        return text.indexOf('\0') >= 0;
+    }
+
+    /** Tracked files that differ from the index. */
+    private final TreeMap<String, String> _modified;
+    /** Files the index does not track. */
+    private final TreeSet<String> _untracked;
+}
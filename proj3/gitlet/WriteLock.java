@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+
+/** The lock a gitlet process holds while it changes the repository, so
+ *  that commands run in parallel in one directory change it one at a
+ *  time instead of overwriting each other's work.
+ *
+ *  The lock is an exclusive FileChannel lock on the file LOCK, held
+ *  from before a command reads any state until after it saves, and
+ *  released by the operating system if the process dies.  Commands that
+ *  only read never take it, and so never wait for a writer.  They need
+ *  not: objects are never changed once written, the refs, index and
+ *  settings are replaced by renaming complete files over them, and the
+ *  append-only files are read only up to their last complete record.
+ *  A reader may see some files as they were before a concurrent save
+ *  and others as they are after it, but since the refs are saved last,
+ *  it never sees a branch pointing at a commit it cannot read.
+ *  @author Kevin Ren
+ */
+class WriteLock implements AutoCloseable {
+
+    /** The lock file. */
+    static final File LOCK = Utils.join(Repo.GITLET, "lock");
+
+    /** Waits until no other process holds the lock, and returns it.
+     *  Then completes any save interrupted by a crash. */
+    static WriteLock acquire() {
+        try {
+            FileChannel channel = FileChannel.open(
+                LOCK.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+            try {
+                _held = new WriteLock(channel, channel.lock());
+            } catch (IOException excp) {
+                channel.close();
+                throw excp;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Journal.recover(Repo.JOURNAL);
+        return _held;
+    }
+
+    /** Completes a save interrupted by a crash, if there is one and no
+     *  process is saving.  A process holding the lock has done so
+     *  already. */
+    static void recover() {
+        if (!Repo.JOURNAL.exists() || _held != null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(
+                 LOCK.toPath(), StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE);
+             FileLock lock = channel.tryLock()) {
+            if (lock != null) {
+                Journal.recover(Repo.JOURNAL);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The lock LOCK, held through CHANNEL. */
+    private WriteLock(FileChannel channel, FileLock lock) {
+        _channel = channel;
+        _lock = lock;
+    }
+
+    /** Releases the lock. */
+    @Override
+    public void close() {
+        _held = null;
+        try {
+            _lock.release();
+            _channel.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The lock this process holds, or null if it holds none. */
+    private static WriteLock _held;
+    /** Channel open on the lock file. */
+    private final FileChannel _channel;
+    /** The lock on the lock file. */
+    private final FileLock _lock;
+}
@@ -1,11 +1,13 @@
 import sys, re
 from subprocess import \
-     check_output, PIPE, STDOUT, DEVNULL, CalledProcessError, TimeoutExpired
+     check_output, Popen, PIPE, STDOUT, DEVNULL, CalledProcessError, \
+     TimeoutExpired
 from os.path import abspath, basename, dirname, exists, join, splitext
 from getopt import getopt, GetoptError
-from os import chdir, environ, getcwd, mkdir, remove, access, W_OK
+from os import chdir, environ, getcwd, makedirs, mkdir, remove, access, W_OK
 from shutil import copyfile, rmtree
 from math import log
+from time import sleep, time
 
 SHORT_USAGE = """\
 Usage: python3 tester.py OPTIONS TEST.in ...
@@ -61,6 +63,15 @@ The instructions each have one of the following forms:
           Python regular expressions and matched accordingly. The directory
           or JAR file containing the gitlet.Main program is assumed to be
           in directory DIR specifed by --progdir (default is ..).
+   & COMMAND OPERANDS
+          Start gitlet.Main with COMMAND OPERANDS as its parameters in the
+          background, without waiting for it or checking its output.  The
+          commands started this way run at the same time as each other and
+          as the instructions after them.
+   W      Wait for all the commands started with & to finish, reporting an
+          error if any fails or is still running after the timeout.
+   W NAME Wait for the file NAME to exist, reporting an error if it does not
+          by the timeout.
    = NAME F
           Check that the file named NAME is identical to src/F, and report an
           error if not.
@@ -140,6 +151,7 @@ def doDelete(name, dir):
 def doCopy(dest, src, dir):
     try:
         doDelete(dest, dir)
+        makedirs(dirname(join(dir, dest)), exist_ok=True)
         copyfile(join(src_dir, src), join(dir, dest))
     except OSError:
         raise ValueError("file {} could not be copied to {}".format(src, dest))
@@ -161,6 +173,35 @@ def doExecute(cmnd, dir, timeout):
     finally:
         chdir(here)
 
+def doStart(cmnd, dir):
+    full_cmnd = "{} {}".format(GITLET_COMMAND, cmnd)
+    return Popen(full_cmnd, shell=True, cwd=dir, stdin=DEVNULL,
+                 stdout=DEVNULL, stderr=DEVNULL)
+
+def doWait(started, timeout):
+    try:
+        for proc in started:
+            code = proc.wait(timeout=timeout)
+            if code != 0:
+                return "java gitlet.Main exited with code {}".format(code)
+        return "OK"
+    except TimeoutExpired:
+        return "timeout"
+    finally:
+        for proc in started:
+            if proc.poll() is None:
+                proc.kill()
+                proc.wait()
+        started.clear()
+
+def doAwait(name, dir, timeout):
+    deadline = time() + timeout
+    while not fileExists(name, dir):
+        if time() > deadline:
+            return False
+        sleep(0.05)
+    return True
+
 def canonicalize(s):
     if s is None:
         return None
@@ -243,6 +284,7 @@ def doTest(test):
         print("Testing directory: {}".format(tmpdir))
     timeout = TIMEOUT
     defns = {}
+    started = []
 
     def do_substs(L):
         c = 0
@@ -325,6 +367,19 @@ def doTest(test):
                     print("ERROR ({})".format(msg))
                     reportDetails(test, included_files, line_num)
                     return False
+            elif Match(r'&\s*(.*)', line):
+                started.append(doStart(Group(1), cdir))
+            elif Match(r'W\s*(\S+)', line):
+                if not doAwait(Group(1), cdir, timeout):
+                    print("ERROR (file {} not present)".format(Group(1)))
+                    reportDetails(test, included_files, line_num)
+                    return False
+            elif Match(r'W\s*$', line):
+                msg = doWait(started, timeout)
+                if msg != "OK":
+                    print("ERROR ({})".format(msg))
+                    reportDetails(test, included_files, line_num)
+                    return False
             elif Match(r'=\s*(\S+)\s+(\S+)', line):
                 if not correctFileOutput(Group(1), Group(2), cdir):
                     print("ERROR (file {} has incorrect content)"
@@ -347,6 +402,7 @@ def doTest(test):
             else:
                 raise ValueError("bad test line at {}".format(line_num))
     finally:
+        doWait(started, 0)
         if not keep:
             cleanTempDir(tmpdir)
 